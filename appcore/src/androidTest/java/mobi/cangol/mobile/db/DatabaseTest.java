@@ -6,8 +6,12 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import mobi.cangol.mobile.logging.Log;
@@ -35,6 +39,228 @@ public class DatabaseTest extends AndroidTestCase {
         dataService.delete(list.get(0).getId());
 
     }
+
+    public void testQueryForAll() throws Exception {
+        Data data = new Data("name_" + atomicInteger.addAndGet(1));
+        data.setNickname("nickname_all");
+        int id = dataService.save(data);
+
+        Data result = dataService.find(id);
+        assertNotNull(result);
+        assertEquals(data.getName(), result.getName());
+        assertEquals(data.getNickname(), result.getNickname());
+
+        List<Data> list = dataService.getAllList();
+        assertTrue(list.size() > 0);
+        dataService.delete(id);
+    }
+
+    public void testBatch() throws Exception {
+        Dao<Data, Integer> dao = DatabaseHelper.createDataBaseHelper(getContext()).getDao(Data.class);
+        List<Data> list = new ArrayList<Data>();
+        for (int i = 0; i < 10; i++) {
+            list.add(new Data("batch_" + i));
+        }
+        assertEquals(10, dao.create(list));
+
+        QueryBuilder queryBuilder = new QueryBuilder(Data.class);
+        queryBuilder.addQuery("name", "batch_", "elike");
+        List<Data> result = dao.query(queryBuilder);
+        for (Data data : result) {
+            data.setNickname("batch");
+        }
+        Data data = new Data("batch_new");
+        result.add(data);
+        assertEquals(result.size(), dao.createOrUpdate(result));
+
+        result = dao.query(queryBuilder);
+        assertEquals(result.size(), dao.delete(result));
+    }
+
+    public void testBatchConflict() throws Exception {
+        DatabaseHelper dbHelper = DatabaseHelper.createDataBaseHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        DatabaseUtils.dropTable(db, UniqueData.class);
+        DatabaseUtils.createTable(db, UniqueData.class);
+        Dao<UniqueData, Integer> dao = dbHelper.getDao(UniqueData.class);
+        dbHelper.setBatchSize(2);
+        try {
+            //冲突的行跳过，不中断批量
+            List<UniqueData> list = new ArrayList<UniqueData>();
+            list.add(new UniqueData("a"));
+            list.add(new UniqueData("b"));
+            list.add(new UniqueData("a"));
+            list.add(new UniqueData("c"));
+            assertEquals(3, dao.create(list));
+            List<UniqueData> result = dao.queryForAll();
+            assertEquals(3, result.size());
+
+            //后面的事务失败时，前面已提交的事务不回滚
+            result.get(0).setName("d");
+            result.get(1).setName("e");
+            result.get(2).setName("d");
+            try {
+                dao.update(result);
+                fail("update should fail on unique conflict");
+            } catch (Exception e) {
+                //expected
+            }
+            assertEquals("d", dao.queryForId(result.get(0).getId()).getName());
+            assertEquals("c", dao.queryForId(result.get(2).getId()).getName());
+        } finally {
+            dbHelper.setBatchSize(0);
+        }
+    }
+
+    public void testObserveCommit() throws Exception {
+        DatabaseHelper dbHelper = DatabaseHelper.createDataBaseHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        DatabaseUtils.dropTable(db, UniqueData.class);
+        DatabaseUtils.createTable(db, UniqueData.class);
+        Dao<UniqueData, Integer> dao = dbHelper.getDao(UniqueData.class);
+        final LinkedBlockingQueue<List<UniqueData>> results = new LinkedBlockingQueue<List<UniqueData>>();
+        QueryObserver<UniqueData> observer = dao.observe(new QueryBuilder(UniqueData.class), new OnQueryChangedListener<UniqueData>() {
+            @Override
+            public void onChanged(List<UniqueData> result) {
+                results.add(result);
+            }
+        });
+        long wait = QueryObserver.THROTTLE_DELAY * 5;
+        try {
+            assertEquals(0, results.poll(2, TimeUnit.SECONDS).size());
+
+            //每次提交的写入回调一次，回调时已能查到提交的数据
+            dao.create(new UniqueData("a"));
+            assertEquals(1, results.poll(2, TimeUnit.SECONDS).size());
+            assertNull(results.poll(wait, TimeUnit.MILLISECONDS));
+
+            List<UniqueData> list = new ArrayList<UniqueData>();
+            list.add(new UniqueData("b"));
+            list.add(new UniqueData("c"));
+            dao.create(list);
+            assertEquals(3, results.poll(2, TimeUnit.SECONDS).size());
+            assertNull(results.poll(wait, TimeUnit.MILLISECONDS));
+
+            //回滚的写入不回调
+            List<UniqueData> all = dao.queryForAll();
+            all.get(0).setName("d");
+            all.get(1).setName("d");
+            try {
+                dao.update(all);
+                fail("update should fail on unique conflict");
+            } catch (Exception e) {
+                //expected
+            }
+            assertNull(results.poll(wait, TimeUnit.MILLISECONDS));
+
+            dao.deleteAll();
+            assertEquals(0, results.poll(2, TimeUnit.SECONDS).size());
+            assertNull(results.poll(wait, TimeUnit.MILLISECONDS));
+        } finally {
+            observer.cancel();
+        }
+    }
+
+    public void testIterate() throws Exception {
+        Dao<Data, Integer> dao = DatabaseHelper.createDataBaseHelper(getContext()).getDao(Data.class);
+        int count = dao.queryForAll().size();
+        CloseableIterator<Data> iterator = dao.iterate(new QueryBuilder(Data.class));
+        int size = 0;
+        while (iterator.hasNext()) {
+            assertNotNull(iterator.next());
+            size++;
+        }
+        iterator.close();
+        assertEquals(count, size);
+
+        size = 0;
+        List<Data> page = dao.queryForPage(null, null, 5);
+        while (!page.isEmpty()) {
+            size += page.size();
+            page = dao.queryForPage(null, page.get(page.size() - 1).getId(), 5);
+        }
+        assertEquals(count, size);
+    }
+
+    public void testPreparedQuery() throws Exception {
+        Dao<Data, Integer> dao = DatabaseHelper.createDataBaseHelper(getContext()).getDao(Data.class);
+        List<Data> list = new ArrayList<Data>();
+        for (int i = 0; i < 3; i++) {
+            list.add(new Data("prepared_" + i));
+        }
+        dao.create(list);
+
+        QueryBuilder queryBuilder = new QueryBuilder(Data.class);
+        queryBuilder.addQuery("name", "prepared_0", "=");
+        PreparedQuery preparedQuery = queryBuilder.prepare();
+        assertEquals(1, preparedQuery.getArgCount());
+        assertEquals(1, dao.query(preparedQuery).size());
+        assertEquals(1, dao.query(preparedQuery, "prepared_1").size());
+
+        queryBuilder = new QueryBuilder(Data.class);
+        queryBuilder.addInQuery("name", Arrays.asList("prepared_0", "prepared_2"), false);
+        List<Data> result = dao.query(queryBuilder);
+        assertEquals(2, result.size());
+        for (Data data : result) {
+            assertTrue("prepared_0".equals(data.getName()) || "prepared_2".equals(data.getName()));
+        }
+        preparedQuery = queryBuilder.prepare();
+        assertEquals(2, preparedQuery.getArgCount());
+        assertEquals(1, dao.query(preparedQuery, "prepared_1", "none").size());
+
+        queryBuilder = new QueryBuilder(Data.class);
+        queryBuilder.addQuery("name", "prepared_0", "prepared_1", "between", false);
+        result = dao.query(queryBuilder);
+        assertEquals(2, result.size());
+        for (Data data : result) {
+            assertTrue("prepared_0".equals(data.getName()) || "prepared_1".equals(data.getName()));
+        }
+
+        queryBuilder = new QueryBuilder(Data.class);
+        queryBuilder.addInQuery("name", Arrays.asList("prepared_0", "prepared_1", "prepared_2"), false);
+        result = dao.query(queryBuilder);
+        assertEquals(3, result.size());
+
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Data data : result) {
+            ids.add(data.getId());
+        }
+        assertEquals(3, dao.queryForIds(ids).size());
+
+        DeleteBuilder deleteBuilder = new DeleteBuilder(Data.class);
+        deleteBuilder.addQuery("name", Arrays.asList("prepared_0", "prepared_1"), "in");
+        assertEquals(2, dao.delete(deleteBuilder));
+        assertEquals(1, dao.deleteByIds(ids));
+    }
+
+    public void testMigrateTable() throws Exception {
+        DatabaseHelper dbHelper = DatabaseHelper.createDataBaseHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        DatabaseUtils.migrateTable(db, Data.class);
+        Dao<Data, Integer> dao = dbHelper.getDao(Data.class);
+        assertNotNull(dao.queryForAll());
+    }
+
+    public void testMigrateBooleanValues() throws Exception {
+        DatabaseHelper dbHelper = DatabaseHelper.createDataBaseHelper(getContext());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        //旧版本的表结构和数据
+        db.execSQL("DROP TABLE IF EXISTS TEST_FLAG_DATA");
+        db.execSQL("CREATE TABLE TEST_FLAG_DATA(id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,flag TEXT)");
+        db.execSQL("INSERT INTO TEST_FLAG_DATA(flag) VALUES('true')");
+        db.execSQL("INSERT INTO TEST_FLAG_DATA(flag) VALUES('false')");
+        DatabaseUtils.migrateTable(db, FlagData.class);
+
+        Dao<FlagData, Integer> dao = dbHelper.getDao(FlagData.class);
+        dao.create(new FlagData(true));
+        QueryBuilder queryBuilder = new QueryBuilder(FlagData.class);
+        queryBuilder.addQuery("flag", true, "=");
+        assertEquals(2, dao.query(queryBuilder).size());
+        queryBuilder = new QueryBuilder(FlagData.class);
+        queryBuilder.addQuery("flag", false, "=");
+        assertEquals(1, dao.query(queryBuilder).size());
+        DatabaseUtils.dropTable(db, FlagData.class);
+    }
 }
 class DataService implements BaseService<Data> {
     private static final String TAG = "DataService";
@@ -178,6 +404,56 @@ class DatabaseHelper extends CoreSQLiteOpenHelper {
 
 }
 
+@DatabaseTable("TEST_UNIQUE_DATA")
+class UniqueData {
+    @DatabaseField(primaryKey = true, notNull = true)
+    private int id;
+    @DatabaseField(unique = true)
+    private String name;
+
+    public UniqueData() {
+    }
+
+    public UniqueData(String name) {
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
+
+@DatabaseTable("TEST_FLAG_DATA")
+class FlagData {
+    @DatabaseField(primaryKey = true, notNull = true)
+    private int id;
+    @DatabaseField
+    private boolean flag;
+
+    public FlagData() {
+    }
+
+    public FlagData(boolean flag) {
+        this.flag = flag;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isFlag() {
+        return flag;
+    }
+}
+
 @DatabaseTable("TEST_DATA")
 class Data {
     @DatabaseField(primaryKey = true, notNull = true)
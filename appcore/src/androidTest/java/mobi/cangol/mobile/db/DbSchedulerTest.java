@@ -0,0 +1,153 @@
+package mobi.cangol.mobile.db;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DbScheduler调度测试：写串行、优先级、合并、取消
+ */
+public class DbSchedulerTest extends AndroidTestCase {
+    private DbScheduler scheduler;
+    private CountDownLatch writerStarted;
+    private CountDownLatch writerRelease;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduler = DbScheduler.getInstance();
+    }
+
+    /**
+     * 占住写线程，之后提交的写任务都在队列中等待
+     */
+    private void blockWriter() throws InterruptedException {
+        writerStarted = new CountDownLatch(1);
+        writerRelease = new CountDownLatch(1);
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                writerStarted.countDown();
+                try {
+                    writerRelease.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null, true, DbTask.PRIORITY_NORMAL, null);
+        assertTrue(writerStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testWriterSerialized() throws Exception {
+        final int count = 8;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            scheduler.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    if (current > maxRunning.get()) {
+                        maxRunning.set(current);
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            }, null, true, DbTask.PRIORITY_NORMAL, null);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+    }
+
+    public void testPriorityOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        blockWriter();
+        int[] priorities = {DbTask.PRIORITY_LOW, DbTask.PRIORITY_HIGH, DbTask.PRIORITY_NORMAL};
+        for (final int priority : priorities) {
+            scheduler.submit(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(priority);
+                    latch.countDown();
+                }
+            }, null, true, priority, null);
+        }
+        writerRelease.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(DbTask.PRIORITY_HIGH, (int) order.get(0));
+        assertEquals(DbTask.PRIORITY_NORMAL, (int) order.get(1));
+        assertEquals(DbTask.PRIORITY_LOW, (int) order.get(2));
+    }
+
+    public void testCoalesce() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicBoolean replaced = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(1);
+        long coalesced = scheduler.getCoalescedCount();
+        blockWriter();
+        Future<?> first = scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                executed.addAndGet(1);
+            }
+        }, "testCoalesce", true, DbTask.PRIORITY_NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                replaced.set(true);
+            }
+        });
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                executed.addAndGet(10);
+                latch.countDown();
+            }
+        }, "testCoalesce", true, DbTask.PRIORITY_NORMAL, null);
+        writerRelease.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(first.isCancelled());
+        assertTrue(replaced.get());
+        assertEquals(10, executed.get());
+        assertEquals(coalesced + 1, scheduler.getCoalescedCount());
+        assertFalse(scheduler.hasPendingTask("testCoalesce"));
+    }
+
+    public void testCancel() throws Exception {
+        final AtomicBoolean executed = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(1);
+        blockWriter();
+        Future<?> future = scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                executed.set(true);
+            }
+        }, "testCancel", true, DbTask.PRIORITY_NORMAL, null);
+        assertTrue(scheduler.hasPendingTask("testCancel"));
+        int depth = scheduler.getWriteQueueDepth();
+        assertTrue(future.cancel(false));
+        assertFalse(scheduler.hasPendingTask("testCancel"));
+        assertEquals(depth - 1, scheduler.getWriteQueueDepth());
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, null, true, DbTask.PRIORITY_LOW, null);
+        writerRelease.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertFalse(executed.get());
+    }
+}
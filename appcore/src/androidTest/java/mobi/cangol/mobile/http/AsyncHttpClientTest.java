@@ -21,6 +21,20 @@ import android.test.AndroidTestCase;
 
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 /**
  * Created by xuewu.wei on 2016/6/8.
  */
@@ -48,4 +62,222 @@ public class AsyncHttpClientTest extends AndroidTestCase {
             }
         });
     }
-}
\ No newline at end of file
+
+    public void testGetNativeAsync() throws Exception {
+        AsyncHttpClient httpClient = AsyncHttpClient.build("test");
+        httpClient.setNativeAsync(true);
+        httpClient.setCoalesceRequests(false);
+        httpClient.setMaxRequests(64, 8);
+        CountingResponseHandler handler = new CountingResponseHandler();
+        httpClient.get(getContext(), url, handler);
+        handler.assertCompletedOnce();
+    }
+
+    public void testGetNativeAsyncRetry() throws Exception {
+        AsyncHttpClient httpClient = AsyncHttpClient.build("test");
+        httpClient.setNativeAsync(true);
+        httpClient.setCoalesceRequests(false);
+        //第一次处理响应时NPE，按IOException重试
+        CountingResponseHandler handler = new CountingResponseHandler() {
+            @Override
+            void sendResponseMessage(Response response) {
+                if (responses.incrementAndGet() == 1) {
+                    throw new NullPointerException("test");
+                }
+                super.sendResponseMessage(response);
+            }
+        };
+        httpClient.get(getContext(), url, handler);
+        handler.assertCompletedOnce();
+        assertEquals(2, handler.responses.get());
+    }
+
+    public void testGetNativeAsyncException() throws Exception {
+        AsyncHttpClient httpClient = AsyncHttpClient.build("test");
+        httpClient.setNativeAsync(true);
+        httpClient.setCoalesceRequests(false);
+        //处理响应时的异常不能抛到Dispatcher线程，回调失败
+        CountingResponseHandler handler = new CountingResponseHandler() {
+            @Override
+            void sendResponseMessage(Response response) {
+                responses.incrementAndGet();
+                throw new IllegalStateException("test");
+            }
+        };
+        httpClient.get(getContext(), url, handler);
+        handler.assertCompletedOnce();
+        assertEquals(1, handler.responses.get());
+        assertEquals(0, handler.success.get());
+        assertEquals(1, handler.failure.get());
+    }
+
+    public void testGetNativeAsyncCancel() throws Exception {
+        AsyncHttpClient httpClient = AsyncHttpClient.build("test");
+        httpClient.setNativeAsync(true);
+        httpClient.setCoalesceRequests(false);
+        CountingResponseHandler handler = new CountingResponseHandler();
+        httpClient.get(getContext(), url, handler);
+        httpClient.cancelRequests(getContext(), true);
+        assertFalse(handler.latch.await(2, TimeUnit.SECONDS));
+        assertEquals(1, handler.start.get());
+        assertEquals(0, handler.success.get() + handler.failure.get());
+        assertEquals(0, handler.finish.get());
+    }
+
+    public void testGetHttpCache() throws Exception {
+        AsyncHttpClient httpClient = AsyncHttpClient.build("test");
+        httpClient.setHttpCache(new File(getContext().getCacheDir(), "http"), 10 * 1024 * 1024);
+        httpClient.get(getContext(), url, new JsonHttpResponseHandler());
+        httpClient.clearHttpCache();
+    }
+
+    public void testGetCoalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AsyncHttpClient httpClient = AsyncHttpClient.build("testCoalesced", createBlockingClient(release, calls));
+        httpClient.setCoalesceRequests(true);
+        Object other = new Object();
+        CountingResponseHandler first = new CountingResponseHandler();
+        CountingResponseHandler second = new CountingResponseHandler();
+        CountingResponseHandler cancelled = new CountingResponseHandler();
+        //第一个请求在拦截器中等待，后面相同的请求都加入它
+        httpClient.get(getContext(), url, first);
+        httpClient.get(getContext(), url, second);
+        httpClient.get(other, url, cancelled);
+        assertEquals(2, httpClient.getCoalescedCount());
+        //取消部分加入者不影响共用的请求
+        httpClient.cancelRequests(other, true);
+        release.countDown();
+        first.assertCompletedOnce();
+        second.assertCompletedOnce();
+        assertEquals(1, first.success.get());
+        assertEquals(1, second.success.get());
+        assertEquals("{}", first.content);
+        assertEquals("{}", second.content);
+        assertEquals(0, cancelled.success.get() + cancelled.failure.get());
+        assertEquals(1, calls.get());
+
+        //请求完成后不再合并
+        CountingResponseHandler third = new CountingResponseHandler();
+        httpClient.get(getContext(), url, third);
+        third.assertCompletedOnce();
+        assertEquals(2, calls.get());
+        assertEquals(2, httpClient.getCoalescedCount());
+    }
+
+    public void testGetCoalescedCancel() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AsyncHttpClient httpClient = AsyncHttpClient.build("testCoalescedCancel", createBlockingClient(release, calls));
+        httpClient.setCoalesceRequests(true);
+        Object context = new Object();
+        CountingResponseHandler first = new CountingResponseHandler();
+        CountingResponseHandler second = new CountingResponseHandler();
+        httpClient.get(context, url, first);
+        httpClient.get(context, url, second);
+        assertEquals(1, httpClient.getCoalescedCount());
+        //所有加入者都取消后，相同的请求重新发起
+        httpClient.cancelRequests(context, true);
+        CountingResponseHandler third = new CountingResponseHandler();
+        httpClient.get(getContext(), url, third);
+        assertEquals(1, httpClient.getCoalescedCount());
+        release.countDown();
+        third.assertCompletedOnce();
+        assertEquals(1, third.success.get());
+        assertEquals(0, first.success.get() + first.failure.get());
+        assertEquals(0, second.success.get() + second.failure.get());
+    }
+
+    public void testCancelRequestsScoped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        //两个实例共享Dispatcher，使用相同的group和context
+        AsyncHttpClient httpClient1 = AsyncHttpClient.build("testCancelScoped", createBlockingClient(release, calls));
+        AsyncHttpClient httpClient2 = AsyncHttpClient.build("testCancelScoped", createBlockingClient(release, calls));
+        httpClient1.setNativeAsync(true);
+        httpClient2.setNativeAsync(true);
+        Object context = new Object();
+        CountingResponseHandler handler1 = new CountingResponseHandler();
+        CountingResponseHandler handler2 = new CountingResponseHandler();
+        httpClient1.get(context, url, handler1);
+        httpClient2.get(context, url, handler2);
+        httpClient1.cancelRequests(context, true);
+        release.countDown();
+        //只取消本实例的请求
+        handler2.assertCompletedOnce();
+        assertEquals(1, handler2.success.get());
+        assertEquals(0, handler1.success.get());
+    }
+
+    /**
+     * 请求在拦截器中等待release后返回固定的响应，不访问网络
+     */
+    private OkHttpClient createBlockingClient(final CountDownLatch release, final AtomicInteger calls) {
+        return HttpClientFactory.newHttpClientBuilder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        calls.incrementAndGet();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        return new Response.Builder()
+                                .request(chain.request())
+                                .protocol(Protocol.HTTP_1_1)
+                                .code(200)
+                                .message("OK")
+                                .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                                .build();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 统计回调次数，结果(成功或失败)和结束都回调后latch归零
+     */
+    private static class CountingResponseHandler extends AsyncHttpResponseHandler {
+        final AtomicInteger start = new AtomicInteger();
+        final AtomicInteger success = new AtomicInteger();
+        final AtomicInteger failure = new AtomicInteger();
+        final AtomicInteger finish = new AtomicInteger();
+        final AtomicInteger responses = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(2);
+        volatile String content;
+
+        @Override
+        public void onStart() {
+            start.incrementAndGet();
+        }
+
+        @Override
+        public void onSuccess(int statusCode, String content) {
+            this.content = content;
+            success.incrementAndGet();
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable error, String content) {
+            failure.incrementAndGet();
+            latch.countDown();
+        }
+
+        @Override
+        public void onFinish() {
+            finish.incrementAndGet();
+            latch.countDown();
+        }
+
+        void assertCompletedOnce() throws InterruptedException {
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            //等待可能重复的回调
+            Thread.sleep(500);
+            assertEquals(1, start.get());
+            assertEquals(1, success.get() + failure.get());
+            assertEquals(1, finish.get());
+        }
+    }
+}
@@ -19,9 +19,13 @@ package mobi.cangol.mobile.parser;
 
 
 import android.test.InstrumentationTestCase;
+import android.util.JsonReader;
 
 import org.json.JSONObject;
 
+import java.io.StringReader;
+import java.util.List;
+
 /**
  * Created by xuewu.wei on 2016/6/6.
  */
@@ -47,6 +51,19 @@ public class JsonUtilsTest extends InstrumentationTestCase {
         assertEquals(jsonObject.getDouble("height"),obj.getHeight());
         assertEquals(jsonObject.getBoolean("isChild"),obj.isChild());
     }
+
+    public void testParserToObjectByReader() throws Exception {
+        JSONObject jsonObject=JsonUtils.formatJSONObject(jsonStr);
+        ParserObject obj=JsonUtils.parserToObject(ParserObject.class,new JsonReader(new StringReader(jsonStr)),false);
+        assertNotNull(obj);
+        assertEquals(jsonObject.getInt("id"),obj.getId());
+        assertEquals(jsonObject.getString("name"),obj.getName());
+        assertEquals(jsonObject.getDouble("height"),obj.getHeight());
+        assertEquals(jsonObject.getBoolean("isChild"),obj.isChild());
+
+        List<ParserObject> list=JsonUtils.parserToList(ParserObject.class,new JsonReader(new StringReader("["+jsonStr+","+jsonStr+"]")),false);
+        assertEquals(2,list.size());
+    }
 }
 class ParserObject {
     @Element("id")
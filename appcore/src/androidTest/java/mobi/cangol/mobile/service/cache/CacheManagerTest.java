@@ -2,7 +2,15 @@ package mobi.cangol.mobile.service.cache;
 
 import android.test.ApplicationTestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import mobi.cangol.mobile.CoreApplication;
 import mobi.cangol.mobile.service.AppService;
@@ -42,6 +50,20 @@ public class CacheManagerTest extends ApplicationTestCase<CoreApplication> {
         });
     }
 
+    public void testGetContentAll() throws Exception {
+        cacheManager.getContentAll(TAG, Arrays.asList("user", "user1"), new CacheLoader() {
+            @Override
+            public void loading() {
+
+            }
+
+            @Override
+            public void returnContent(Object content) {
+
+            }
+        });
+    }
+
     public void testHasContent() throws Exception {
         cacheManager.hasContent(TAG,"user");
     }
@@ -51,6 +73,138 @@ public class CacheManagerTest extends ApplicationTestCase<CoreApplication> {
         cacheManager.addContent(TAG,"user",user);
     }
 
+    public void testAddContentBinary() throws Exception {
+        ArrayList<Object> list=new ArrayList<>();
+        list.add("Jick");
+        list.add(12);
+        list.add(new byte[]{1,2});
+        cacheManager.addContent(TAG,"list",list);
+        cacheManager.addContent(TAG,"json","{\"id\":1}");
+        assertEquals("{\"id\":1}",cacheManager.getContent(TAG,"json"));
+    }
+
+    public void testAddContentSoftPeriod() throws Exception {
+        cacheManager.setCacheRefresher(TAG, new CacheRefresher() {
+            @Override
+            public void refresh(String context, String id, Callback callback) {
+                callback.onRefreshed(new User(1,"Jick","13"));
+            }
+        });
+        User user=new User(1,"Jick","12");
+        cacheManager.addContent(TAG,"user",user,CacheObject.TIME_HOUR,1);
+        assertNotNull(cacheManager.getContent(TAG,"user"));
+        cacheManager.setCacheRefresher(TAG,null);
+    }
+
+    public void testLegacyNotStale() throws Exception {
+        //旧版本的数据经Java序列化读取，没有新鲜期
+        CacheObject legacy=new CacheObject(TAG,"legacy","value",CacheObject.TIME_HOUR);
+        ByteArrayOutputStream bos=new ByteArrayOutputStream();
+        ObjectOutputStream oos=new ObjectOutputStream(bos);
+        oos.writeObject(legacy);
+        oos.close();
+        CacheObject obj=new CacheObjectSerializer().read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals("value",obj.getObject());
+        assertEquals(0,obj.getSoftPeriod());
+        assertFalse(obj.isStale());
+        assertFalse(obj.isRefreshNeeded());
+
+        CacheObject stale=new CacheObject(TAG,"stale","value",CacheObject.TIME_HOUR,1);
+        stale.setTimestamp(System.currentTimeMillis()-10);
+        assertTrue(stale.isStale());
+    }
+
+    public void testMemoryCacheOversize() throws Exception {
+        MemoryCache memoryCache=new MemoryCache(1024, new CacheSizer() {
+            @Override
+            public long sizeOf(String context, String id, Serializable object) {
+                return ((String) object).length();
+            }
+        });
+        final List<CacheObject> evicted=new ArrayList<>();
+        memoryCache.setOnEvictedListener(new MemoryCache.OnEvictedListener() {
+            @Override
+            public void onEvicted(CacheObject object) {
+                evicted.add(object);
+            }
+        });
+        char[] chars=new char[(int) memoryCache.maxEntrySize()+1];
+        Arrays.fill(chars,'a');
+        //超过单个对象上限的不放入内存，也不算淘汰
+        assertFalse(memoryCache.put(TAG,"big",new CacheObject(TAG,"big",new String(chars))));
+        assertNull(memoryCache.get(TAG,"big"));
+        assertTrue(evicted.isEmpty());
+        assertTrue(memoryCache.keys(TAG).contains("big"));
+
+        //磁盘上移除后清除索引，内存中的对象保留索引
+        assertTrue(memoryCache.put(TAG,"small",new CacheObject(TAG,"small","a")));
+        memoryCache.unindex(TAG,"big");
+        memoryCache.unindex(TAG,"small");
+        assertFalse(memoryCache.keys(TAG).contains("big"));
+        assertTrue(memoryCache.keys(TAG).contains("small"));
+    }
+
+    public void testDiskLruCachePeek() throws Exception {
+        File dir=new File(getContext().getCacheDir(),"testDiskLruCachePeek");
+        DiskLruCache.deleteContents(dir);
+        DiskLruCache diskLruCache=DiskLruCache.open(dir,1,1,1024*1024);
+        try {
+            for (String key : Arrays.asList("a","b")) {
+                DiskLruCache.Editor editor=diskLruCache.edit(key);
+                editor.set(0,key);
+                editor.commit();
+            }
+            //peek和contains不改变LRU顺序
+            InputStream in=diskLruCache.peek("a",0);
+            assertNotNull(in);
+            assertEquals('a',in.read());
+            in.close();
+            assertTrue(diskLruCache.contains("a"));
+            assertNull(diskLruCache.peek("c",0));
+            assertEquals(Arrays.asList("a","b"),diskLruCache.keys());
+            //get算作一次访问
+            diskLruCache.get("a").close();
+            assertEquals(Arrays.asList("b","a"),diskLruCache.keys());
+        } finally {
+            diskLruCache.delete();
+        }
+    }
+
+    public void testShardCountChanged() throws Exception {
+        File dir=new File(getContext().getCacheDir(),"testShardCountChanged");
+        if (dir.exists()) {
+            DiskLruCache.deleteContents(dir);
+        }
+        ShardedDiskLruCache cache=ShardedDiskLruCache.open(dir,1,1,1024*1024,4);
+        DiskLruCache.Editor editor=cache.edit("a");
+        editor.set(0,"a");
+        editor.commit();
+        cache.close();
+        assertTrue(new File(dir,"3").isDirectory());
+
+        //分片数变化后旧的分片目录被清除
+        cache=ShardedDiskLruCache.open(dir,1,1,1024*1024,1);
+        assertFalse(cache.contains("a"));
+        assertFalse(new File(dir,"3").exists());
+        editor=cache.edit("b");
+        editor.set(0,"b");
+        editor.commit();
+        cache.close();
+
+        //分片数不变时保留数据
+        cache=ShardedDiskLruCache.open(dir,1,1,1024*1024,1);
+        assertTrue(cache.contains("b"));
+        cache.delete();
+    }
+
+    public void testGetStats() throws Exception {
+        cacheManager.addContent(TAG,"user",new User(1,"Jick","12"));
+        cacheManager.getContent(TAG,"user");
+        CacheStats stats=cacheManager.getStats();
+        assertNotNull(stats);
+        assertTrue(stats.getMemoryHitCount()>0);
+    }
+
     public void testRemoveContext() throws Exception {
         cacheManager.removeContext(TAG);
     }
@@ -75,6 +229,19 @@ public class CacheManagerTest extends ApplicationTestCase<CoreApplication> {
         cacheManager.clearCache();
     }
 
+    public void testSetCacheSizer() throws Exception {
+        cacheManager.setCacheSizer(new CacheSizer() {
+            @Override
+            public long sizeOf(String context, String id, Serializable object) {
+                return 1024;
+            }
+        });
+        User user=new User(1,"Jick","12");
+        cacheManager.addContent(TAG,"user",user);
+        assertNotNull(cacheManager.getContent(TAG,"user"));
+        cacheManager.setCacheSizer(null);
+    }
+
 }
 class User implements Serializable {
     private String name;
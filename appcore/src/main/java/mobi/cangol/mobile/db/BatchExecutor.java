@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+
+/**
+ * 基于预编译语句的批量执行器，每个实体类每种操作只编译一次语句，逐行重新绑定参数
+ *
+ * @author Cangol
+ */
+final class BatchExecutor<T> {
+    static final int OP_INSERT = 0;
+    static final int OP_UPDATE = 1;
+    static final int OP_DELETE = 2;
+    static final int OP_UPSERT = 3;
+
+    private static final int STMT_INSERT = 0;
+    private static final int STMT_INSERT_WITH_ID = 1;
+    private static final int STMT_UPDATE = 2;
+    private static final int STMT_DELETE = 3;
+
+    private final EntityMapping<T> mMapping;
+    private final String[] mSqls;
+    private final SQLiteStatement[] mStatements;
+    private SQLiteDatabase mDatabase;
+
+    BatchExecutor(EntityMapping<T> mapping) {
+        this.mMapping = mapping;
+        this.mSqls = buildSqls(mapping);
+        this.mStatements = new SQLiteStatement[mSqls.length];
+    }
+
+    private static String[] buildSqls(EntityMapping<?> mapping) {
+        String table = mapping.getTableName();
+        String idName = mapping.getIdColumnName();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        StringBuilder sets = new StringBuilder();
+        for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+            if (column.primaryKey) {
+                continue;
+            }
+            if (columns.length() > 0) {
+                columns.append(',');
+                values.append(',');
+                sets.append(',');
+            }
+            columns.append(column.name);
+            values.append('?');
+            sets.append(column.name).append("=?");
+        }
+        String[] sqls = new String[4];
+        sqls[STMT_INSERT] = "INSERT INTO " + table + "(" + columns + ") VALUES(" + values + ")";
+        if (idName != null) {
+            sqls[STMT_INSERT_WITH_ID] = "INSERT INTO " + table + "(" + columns + (columns.length() > 0 ? "," : "") + idName
+                    + ") VALUES(" + values + (values.length() > 0 ? "," : "") + "?)";
+            sqls[STMT_UPDATE] = "UPDATE " + table + " SET " + sets + " WHERE " + idName + "=?";
+            sqls[STMT_DELETE] = "DELETE FROM " + table + " WHERE " + idName + "=?";
+        }
+        return sqls;
+    }
+
+    private SQLiteStatement getStatement(SQLiteDatabase db, int type) {
+        if (mDatabase != db) {
+            close();
+            mDatabase = db;
+        }
+        SQLiteStatement statement = mStatements[type];
+        if (statement == null) {
+            if (mSqls[type] == null) {
+                throw new IllegalStateException(mMapping.getEntityClass().getSimpleName() + " has no primary key");
+            }
+            statement = db.compileStatement(mSqls[type]);
+            mStatements[type] = statement;
+        }
+        return statement;
+    }
+
+    /**
+     * 批量执行操作，每batchSize行提交一次事务
+     * 插入违反约束的行与SQLiteDatabase.insert一致，跳过且不计数，不中断批量；
+     * 其他异常中断批量，已提交的事务(之前的batchSize行)不会回滚
+     *
+     * @param db
+     * @param op        操作类型 OP_*
+     * @param items     实体集合
+     * @param batchSize 每个事务的行数，<=0表示全部在一个事务中
+     * @return 影响的行数
+     */
+    synchronized int execute(SQLiteDatabase db, int op, Collection<?> items, int batchSize) throws IllegalAccessException {
+        int result = 0;
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (Object item : items) {
+                result += executeOne(db, op, item);
+                if (batchSize > 0 && ++count % batchSize == 0) {
+                    db.setTransactionSuccessful();
+                    db.endTransaction();
+                    db.beginTransaction();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    private int executeOne(SQLiteDatabase db, int op, Object item) throws IllegalAccessException {
+        switch (op) {
+            case OP_INSERT:
+                return insert(db, item, false);
+            case OP_UPDATE:
+                return update(db, item);
+            case OP_DELETE:
+                return deleteById(db, mMapping.getIdValue(item));
+            case OP_UPSERT:
+                int rows = update(db, item);
+                if (rows == 0) {
+                    rows = insert(db, item, !isUnassignedId(mMapping.getIdValue(item)));
+                }
+                return rows;
+            default:
+                throw new IllegalArgumentException("unknown op " + op);
+        }
+    }
+
+    private int insert(SQLiteDatabase db, Object item, boolean withId) throws IllegalAccessException {
+        SQLiteStatement statement = getStatement(db, withId ? STMT_INSERT_WITH_ID : STMT_INSERT);
+        statement.clearBindings();
+        int index = bindColumns(statement, item);
+        if (withId) {
+            mMapping.getIdColumn().bindValue(statement, index, item);
+        }
+        try {
+            return statement.executeInsert() == -1 ? 0 : 1;
+        } catch (SQLiteConstraintException e) {
+            //与SQLiteDatabase.insert一致，冲突的行不插入
+            return 0;
+        }
+    }
+
+    private int update(SQLiteDatabase db, Object item) throws IllegalAccessException {
+        SQLiteStatement statement = getStatement(db, STMT_UPDATE);
+        statement.clearBindings();
+        int index = bindColumns(statement, item);
+        mMapping.getIdColumn().bindValue(statement, index, item);
+        return statement.executeUpdateDelete();
+    }
+
+    private int deleteById(SQLiteDatabase db, Object id) {
+        SQLiteStatement statement = getStatement(db, STMT_DELETE);
+        statement.clearBindings();
+        EntityMapping.bindObject(statement, 1, id);
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * 按顺序绑定非主键列
+     *
+     * @return 下一个参数的位置
+     */
+    private int bindColumns(SQLiteStatement statement, Object item) throws IllegalAccessException {
+        int index = 1;
+        for (EntityMapping.ColumnMapping column : mMapping.getColumns()) {
+            if (!column.primaryKey) {
+                column.bindValue(statement, index++, item);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 主键为null或0时视为未分配，由数据库自增生成
+     */
+    private static boolean isUnassignedId(Object id) {
+        return id == null || (id instanceof Number && ((Number) id).longValue() == 0);
+    }
+
+    /**
+     * 关闭所有缓存的语句
+     */
+    synchronized void close() {
+        for (int i = 0; i < mStatements.length; i++) {
+            if (mStatements[i] != null) {
+                mStatements[i].close();
+                mStatements[i] = null;
+            }
+        }
+        mDatabase = null;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 可关闭的迭代器，逐行读取查询结果，遍历结束后自动关闭，提前结束遍历时须调用close
+ *
+ * @author Cangol
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * 关闭底层游标，不抛出IOException
+     */
+    @Override
+    void close();
+}
@@ -16,11 +16,14 @@
 package mobi.cangol.mobile.db;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.StrictMode;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public abstract class CoreSQLiteOpenHelper {
     private static final String TAG = "CoreSQLiteOpenHelper";
 
@@ -29,6 +32,21 @@ public abstract class CoreSQLiteOpenHelper {
      */
     protected CreateDBHelper mDbHelper = null;
 
+    /**
+     * 已创建的dao，每个实体类一个
+     */
+    private final ConcurrentHashMap<Class<?>, DaoImpl<?, ?>> mDaoMap = new ConcurrentHashMap<Class<?>, DaoImpl<?, ?>>();
+
+    /**
+     * 表变化跟踪
+     */
+    private final TableChangeTracker mChangeTracker = new TableChangeTracker();
+
+    /**
+     * 批量操作每个事务提交的行数
+     */
+    private volatile int mBatchSize = 0;
+
     /**
      * 获得数据库名称
      *
@@ -60,6 +78,76 @@ public abstract class CoreSQLiteOpenHelper {
      */
     public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
 
+    /**
+     * 是否启用WAL(write-ahead logging)，启用后读写可并发，事务外的查询由系统连接池中的只读连接执行。
+     * 只读连接由系统创建，不会回调onConfigure，下面的getPageCacheSize、getMmapSize对它们不生效
+     *
+     * @return 默认false
+     */
+    protected boolean isWriteAheadLoggingEnabled() {
+        return false;
+    }
+
+    /**
+     * 页缓存大小(PRAGMA cache_size)，正数为页数，负数为KB
+     * 该设置是连接级别的，只作用于主连接(所有写操作和事务内的查询)，WAL连接池中的只读连接仍使用sqlite默认值
+     *
+     * @return 0表示使用sqlite默认值
+     */
+    protected int getPageCacheSize() {
+        return 0;
+    }
+
+    /**
+     * 同步级别(PRAGMA synchronous)，OFF/NORMAL/FULL，WAL模式下推荐NORMAL
+     * 只作用于主连接，所有写操作都在主连接上执行
+     *
+     * @return null表示使用系统默认值
+     */
+    protected String getSynchronousMode() {
+        return null;
+    }
+
+    /**
+     * 内存映射I/O大小(PRAGMA mmap_size)，单位字节，sqlite 3.7.17以上有效
+     * 与cache_size相同，只作用于主连接，不会加速WAL连接池中只读连接上的查询
+     *
+     * @return 0表示不设置
+     */
+    protected long getMmapSize() {
+        return 0;
+    }
+
+    /**
+     * 在数据库打开时应用连接配置，只对主连接执行
+     *
+     * @param db
+     */
+    private void configure(SQLiteDatabase db) {
+        if (isWriteAheadLoggingEnabled() && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+        if (getPageCacheSize() != 0) {
+            execPragma(db, "cache_size=" + getPageCacheSize());
+        }
+        if (getSynchronousMode() != null) {
+            execPragma(db, "synchronous=" + getSynchronousMode());
+        }
+        if (getMmapSize() > 0) {
+            execPragma(db, "mmap_size=" + getMmapSize());
+        }
+    }
+
+    private void execPragma(SQLiteDatabase db, String pragma) {
+        //部分PRAGMA会返回结果，execSQL不支持，统一使用rawQuery
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * 初始化数据库
      *
@@ -118,14 +206,58 @@ public abstract class CoreSQLiteOpenHelper {
      * @param clazz
      * @return
      */
+    @SuppressWarnings("unchecked")
     public <T, ID> Dao<T, ID> getDao(Class<T> clazz) {
-        return new DaoImpl<T, ID>(this, clazz);
+        DaoImpl<T, ID> dao = (DaoImpl<T, ID>) mDaoMap.get(clazz);
+        if (dao == null) {
+            dao = new DaoImpl<T, ID>(this, clazz);
+            DaoImpl<T, ID> old = (DaoImpl<T, ID>) mDaoMap.putIfAbsent(clazz, dao);
+            if (old != null) {
+                dao = old;
+            }
+        }
+        return dao;
+    }
+
+    /**
+     * 通知表数据已变化，Dao的写操作会自动通知，直接执行SQL修改数据时需手动调用
+     *
+     * @param table
+     */
+    public void notifyTableChanged(String table) {
+        mChangeTracker.notifyChanged(table);
+    }
+
+    TableChangeTracker getChangeTracker() {
+        return mChangeTracker;
+    }
+
+    /**
+     * 设置批量操作(create/update/delete集合)每个事务提交的行数，<=0表示全部在一个事务中提交
+     * 分多个事务时，后面的事务失败不会回滚前面已提交的行
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.mBatchSize = batchSize;
+    }
+
+    /**
+     * 获取批量操作每个事务提交的行数
+     *
+     * @return
+     */
+    public int getBatchSize() {
+        return mBatchSize;
     }
 
     /**
      * 关闭
      */
     public void close() {
+        for (DaoImpl<?, ?> dao : mDaoMap.values()) {
+            dao.close();
+        }
         if (mDbHelper != null) {
             Log.i(TAG, "Close database '" + getDataBaseName() + "'");
             mDbHelper.close();
@@ -151,5 +283,18 @@ public abstract class CoreSQLiteOpenHelper {
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             CoreSQLiteOpenHelper.this.onUpgrade(db, oldVersion, newVersion);
         }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            CoreSQLiteOpenHelper.this.configure(db);
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            //API 16以下不会回调onConfigure
+            if (android.os.Build.VERSION.SDK_INT < 16) {
+                CoreSQLiteOpenHelper.this.configure(db);
+            }
+        }
     }
 }
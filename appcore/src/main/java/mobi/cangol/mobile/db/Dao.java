@@ -30,6 +30,43 @@ public abstract interface Dao<T, ID> {
      */
     public abstract List<T> query(QueryBuilder queryBuilder) throws SQLException;
 
+    /**
+     * 条件查询，返回逐行映射的迭代器，不一次性加载所有结果
+     *
+     * @param queryBuilder
+     * @return
+     */
+    public abstract CloseableIterator<T> iterate(QueryBuilder queryBuilder) throws SQLException;
+
+    /**
+     * 按主键分页查询(keyset)，返回主键大于lastId的pageSize条记录，按主键升序
+     * queryBuilder的orderBy和limit将被忽略
+     *
+     * @param queryBuilder 查询条件，可为null
+     * @param lastId       上一页最后一条记录的主键，null表示第一页
+     * @param pageSize
+     * @return
+     */
+    public abstract List<T> queryForPage(QueryBuilder queryBuilder, ID lastId, int pageSize) throws SQLException;
+
+    /**
+     * 执行预编译查询
+     *
+     * @param preparedQuery QueryBuilder.prepare()生成
+     * @param args          依次绑定到占位符的参数，为空时使用构建时的条件值
+     * @return
+     */
+    public abstract List<T> query(PreparedQuery preparedQuery, Object... args) throws SQLException;
+
+    /**
+     * 观察查询结果，注册后及每次本表经Dao写入变化后在后台线程重新查询并回调
+     *
+     * @param queryBuilder
+     * @param listener
+     * @return 不再需要时调用cancel
+     */
+    public abstract QueryObserver<T> observe(QueryBuilder queryBuilder, OnQueryChangedListener<T> listener);
+
     /**
      * 根据K查询
      *
@@ -38,6 +75,14 @@ public abstract interface Dao<T, ID> {
      */
     public abstract T queryForId(ID paramK) throws SQLException;
 
+    /**
+     * 根据K列表查询，使用in条件一次查询
+     *
+     * @param paramCollection
+     * @return
+     */
+    public abstract List<T> queryForIds(Collection<ID> paramCollection) throws SQLException;
+
     /**
      * 查询所有
      *
@@ -54,10 +99,10 @@ public abstract interface Dao<T, ID> {
     public abstract int create(T paramT) throws SQLException;
 
     /**
-     * 新建一组数据对象
+     * 新建一组数据对象，违反约束(如主键重复)的对象跳过，不计入返回值
      *
      * @param paramT
-     * @return
+     * @return 插入的行数
      */
     public abstract int create(Collection<T> paramT) throws SQLException;
 
@@ -134,6 +179,14 @@ public abstract interface Dao<T, ID> {
      */
     public abstract int deleteByIds(Collection<ID> paramCollection) throws SQLException;
 
+    /**
+     * 新建或更新一组数据对象，主键已存在的记录更新，否则插入
+     *
+     * @param paramT
+     * @return
+     */
+    public abstract int createOrUpdate(Collection<T> paramT) throws SQLException;
+
     /**
      * 清空表删
      */
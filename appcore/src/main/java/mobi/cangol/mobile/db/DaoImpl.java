@@ -21,26 +21,41 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.StrictMode;
+import android.util.LruCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import mobi.cangol.mobile.logging.Log;
 
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 class DaoImpl<T, ID> implements Dao<T, ID> {
+    private static final int MAX_IN_ARGS = 500;
     private CoreSQLiteOpenHelper mDatabaseHelper;
     private String mTableName;
     private Class<T> mClazz;
+    private EntityMapping<T> mMapping;
+    private BatchExecutor<T> mBatchExecutor;
+    private PreparedQuery mIdQuery;
+    private LruCache<Object, T> mEntityCache;
+    /**
+     * 缓存失效计数，每次淘汰加1，读库期间有淘汰时不写入缓存
+     */
+    private long mCacheGeneration;
 
     public DaoImpl(CoreSQLiteOpenHelper databaseHelper, Class<T> clazz) {
         this.mDatabaseHelper = databaseHelper;
         this.mClazz = clazz;
-        DatabaseTable dbTable = clazz.getAnnotation(DatabaseTable.class);
-        if (dbTable != null) {
-            this.mTableName = "".equals(dbTable.value()) ? clazz.getSimpleName() : dbTable.value();
-        } else {
+        this.mMapping = EntityMapping.get(clazz);
+        this.mTableName = mMapping.getTableName();
+        this.mBatchExecutor = new BatchExecutor<T>(mMapping);
+        if (mMapping.getCacheSize() > 0 && mMapping.getIdColumn() != null) {
+            this.mEntityCache = new LruCache<Object, T>(mMapping.getCacheSize());
+        }
+        this.mIdQuery = new PreparedQuery(false, mTableName, mMapping.getIdColumnName() + "=?", new String[1], null, null, null, null);
+        if (mTableName == null) {
             Log.e("has no Annotation DatabaseTable clazz=" + clazz.getSimpleName());
         }
     }
@@ -57,6 +72,38 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
                 queryBuilder.getLimitValue());
     }
 
+    private Cursor query(SQLiteDatabase db, PreparedQuery preparedQuery, String[] args) {
+        return db.query(preparedQuery.isDistinctValue(),
+                preparedQuery.getTable(),
+                null,
+                preparedQuery.getSelection(),
+                args,
+                preparedQuery.getGroupByValue(),
+                preparedQuery.getHavingValue(),
+                preparedQuery.getOrderByValue(),
+                preparedQuery.getLimitValue());
+    }
+
+    @Override
+    public List<T> query(PreparedQuery preparedQuery, Object... args) throws SQLException {
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+        ArrayList<T> list = new ArrayList<T>();
+        try {
+            SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+            Cursor cursor = query(db, preparedQuery, preparedQuery.bind(args));
+            int[] indexes = mMapping.getColumnIndexes(cursor);
+            while (cursor.moveToNext()) {
+                list.add(mMapping.cursorToObject(cursor, indexes));
+            }
+            cursor.close();
+        } catch (Exception e) {
+            throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+        return list;
+    }
+
     @Override
     public List<T> query(QueryBuilder queryBuilder) {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
@@ -64,10 +111,9 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
         try {
             SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
             Cursor cursor = query(db, queryBuilder);
-            T obj = null;
+            int[] indexes = mMapping.getColumnIndexes(cursor);
             while (cursor.moveToNext()) {
-                obj = DatabaseUtils.cursorToObject(mClazz, cursor);
-                list.add(obj);
+                list.add(mMapping.cursorToObject(cursor, indexes));
             }
             cursor.close();
         } catch (Exception e) {
@@ -77,18 +123,77 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
         return list;
     }
 
+    @Override
+    public CloseableIterator<T> iterate(QueryBuilder queryBuilder) throws SQLException {
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+        try {
+            SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+            return new CursorIterator(query(db, queryBuilder));
+        } catch (Exception e) {
+            throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+    }
+
+    @Override
+    public List<T> queryForPage(QueryBuilder queryBuilder, ID lastId, int pageSize) throws SQLException {
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+        ArrayList<T> list = new ArrayList<T>(pageSize);
+        try {
+            String idName = mMapping.getIdColumnName();
+            String selection = queryBuilder == null ? null : queryBuilder.getSelection();
+            String[] selectionArgs = queryBuilder == null ? null : queryBuilder.getSelectionArgs();
+            if (lastId != null) {
+                if (selection == null || selection.length() == 0) {
+                    selection = idName + ">?";
+                    selectionArgs = new String[]{String.valueOf(lastId)};
+                } else {
+                    selection = "(" + selection + ") and " + idName + ">?";
+                    String[] args = new String[selectionArgs.length + 1];
+                    System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+                    args[selectionArgs.length] = String.valueOf(lastId);
+                    selectionArgs = args;
+                }
+            }
+            SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+            Cursor cursor = db.query(queryBuilder != null && queryBuilder.isDistinctValue(),
+                    mTableName,
+                    null,
+                    selection,
+                    selectionArgs,
+                    queryBuilder == null ? null : queryBuilder.getGroupByValue(),
+                    queryBuilder == null ? null : queryBuilder.getHavingValue(),
+                    idName + " ASC",
+                    String.valueOf(pageSize));
+            int[] indexes = mMapping.getColumnIndexes(cursor);
+            while (cursor.moveToNext()) {
+                list.add(mMapping.cursorToObject(cursor, indexes));
+            }
+            cursor.close();
+        } catch (Exception e) {
+            throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+        return list;
+    }
+
     @Override
     public T queryForId(ID paramID) throws SQLException {
+        T obj = getCache(paramID);
+        if (obj != null) {
+            return obj;
+        }
+        long generation = getCacheGeneration();
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
-        T obj = null;
         try {
             SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
-            QueryBuilder queryBuilder = new QueryBuilder(mClazz);
-            queryBuilder.addQuery(DatabaseUtils.getIdColumnName(mClazz), paramID, "=");
-            Cursor cursor = query(db, queryBuilder);
+            Cursor cursor = query(db, mIdQuery, mIdQuery.bind(paramID));
             if (cursor.getCount() > 0) {
                 cursor.moveToFirst();
-                obj = DatabaseUtils.cursorToObject(mClazz, cursor);
+                obj = mMapping.cursorToObject(cursor, mMapping.getColumnIndexes(cursor));
+                putCache(paramID, obj, generation);
             }
             cursor.close();
         } catch (Exception e) {
@@ -98,6 +203,28 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
         return obj;
     }
 
+    @Override
+    public List<T> queryForIds(Collection<ID> paramCollection) throws SQLException {
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+        ArrayList<T> list = new ArrayList<T>(paramCollection.size());
+        try {
+            SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+            for (String[] args : splitIds(paramCollection)) {
+                Cursor cursor = db.query(mTableName, null, makeIdInSelection(args.length), args, null, null, null);
+                int[] indexes = mMapping.getColumnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    list.add(mMapping.cursorToObject(cursor, indexes));
+                }
+                cursor.close();
+            }
+        } catch (Exception e) {
+            throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+        return list;
+    }
+
     @Override
     public List<T> queryForAll() throws SQLException {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
@@ -106,10 +233,9 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
             SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
             QueryBuilder queryBuilder = new QueryBuilder(mClazz);
             Cursor cursor = query(db, queryBuilder);
-            T obj = null;
+            int[] indexes = mMapping.getColumnIndexes(cursor);
             while (cursor.moveToNext()) {
-                obj = DatabaseUtils.cursorToObject(mClazz, cursor);
-                list.add(obj);
+                list.add(mMapping.cursorToObject(cursor, indexes));
             }
             cursor.close();
         } catch (Exception e) {
@@ -125,12 +251,10 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
         T result = null;
         try {
             SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
-            QueryBuilder queryBuilder = new QueryBuilder(mClazz);
-            queryBuilder.addQuery(DatabaseUtils.getIdColumnName(mClazz), DatabaseUtils.getIdValue(paramT), "=");
-            Cursor cursor = query(db, queryBuilder);
+            Cursor cursor = query(db, mIdQuery, mIdQuery.bind(mMapping.getIdValue(paramT)));
             if (cursor.getCount() > 0) {
                 cursor.moveToFirst();
-                result = DatabaseUtils.cursorToObject(paramT, cursor);
+                result = mMapping.cursorToObject(paramT, cursor, mMapping.getColumnIndexes(cursor));
             }
             cursor.close();
         } catch (Exception e) {
@@ -148,144 +272,193 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
         long result = -1;
         try {
             db.beginTransaction();
-            result = db.insert(mTableName, null, DatabaseUtils.getContentValues(paramT));
+            result = db.insert(mTableName, null, mMapping.getContentValues(paramT));
             db.setTransactionSuccessful();
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
         } finally {
             db.endTransaction();
         }
+        //提交之后再通知，观察者不会读到未提交的数据
+        notifyChanged();
         StrictMode.setThreadPolicy(oldPolicy);
         return (int) result;
     }
 
     @Override
     public int create(Collection<T> paramTs) throws SQLException {
+        return executeBatch(BatchExecutor.OP_INSERT, paramTs);
+    }
+
+    @Override
+    public int update(T paramT) throws SQLException {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        long result = -1;
+        int result = -1;
+        Object id = null;
         try {
-            db.beginTransaction();
-            for (T paramT : paramTs) {
-                result = result + db.insert(mTableName, null, DatabaseUtils.getContentValues(paramT));
-            }
-            db.setTransactionSuccessful();
+            id = mMapping.getIdValue(paramT);
+            result = db.update(mTableName, mMapping.getContentValues(paramT), mMapping.getIdColumnName() + "=?", new String[]{"" + id});
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
         } finally {
-            db.endTransaction();
+            evictCache(id);
         }
+        notifyChanged();
         StrictMode.setThreadPolicy(oldPolicy);
-        return (int) result;
+        return result;
     }
 
     @Override
-    public int update(T paramT) throws SQLException {
+    public int update(Collection<T> paramTs) throws SQLException {
+        return executeBatch(BatchExecutor.OP_UPDATE, paramTs);
+    }
+
+    @Override
+    public int updateById(T paramT, ID paramID) throws SQLException {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         int result = -1;
         try {
-            result = db.update(mTableName, DatabaseUtils.getContentValues(paramT), DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + DatabaseUtils.getIdValue(paramT)});
+            result = db.update(mTableName, mMapping.getContentValues(paramT), mMapping.getIdColumnName() + "=?", new String[]{"" + paramID});
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            evictCache(paramID);
         }
+        notifyChanged();
         StrictMode.setThreadPolicy(oldPolicy);
         return result;
     }
 
     @Override
-    public int update(Collection<T> paramTs) throws SQLException {
+    public int delete(T paramT) throws SQLException {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         int result = -1;
+        Object id = null;
         try {
-            db.beginTransaction();
-            for (T paramT : paramTs) {
-                result = result + db.update(mTableName, DatabaseUtils.getContentValues(paramT), DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + DatabaseUtils.getIdValue(paramT)});
-            }
-            db.setTransactionSuccessful();
+            id = mMapping.getIdValue(paramT);
+            result = db.delete(mTableName, mMapping.getIdColumnName() + "=?", new String[]{"" + id});
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
         } finally {
-            db.endTransaction();
+            evictCache(id);
         }
+        notifyChanged();
         StrictMode.setThreadPolicy(oldPolicy);
         return result;
     }
 
     @Override
-    public int updateById(T paramT, ID paramID) throws SQLException {
-        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+    public int delete(Collection<T> paramCollection) throws SQLException {
+        return executeBatch(BatchExecutor.OP_DELETE, paramCollection);
+    }
 
+    @Override
+    public int delete(DeleteBuilder deleteBuilder) throws SQLException {
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        int result = -1;
+        int result;
         try {
-            result = db.update(mTableName, DatabaseUtils.getContentValues(paramT), DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + paramID});
-        } catch (Exception e) {
-            throw new SQLException(mTableName + " error=" + e.getMessage());
+            result = db.delete(mTableName, deleteBuilder.getWhere(), deleteBuilder.getWhereArgs());
+        } finally {
+            evictAllCache();
         }
-        StrictMode.setThreadPolicy(oldPolicy);
+        notifyChanged();
         return result;
     }
 
     @Override
-    public int delete(T paramT) throws SQLException {
-        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
+    public int deleteById(ID paramID) throws SQLException {
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        int result = -1;
+        int result;
         try {
-            result = db.delete(mTableName, DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + DatabaseUtils.getIdValue(paramT)});
-        } catch (Exception e) {
-            throw new SQLException(mTableName + " error=" + e.getMessage());
+            result = db.delete(mTableName, mMapping.getIdColumnName() + "=?", new String[]{"" + paramID});
+        } finally {
+            evictCache(paramID);
         }
-        StrictMode.setThreadPolicy(oldPolicy);
+        notifyChanged();
         return result;
     }
 
     @Override
-    public int delete(Collection<T> paramCollection) throws SQLException {
+    public int deleteByIds(Collection<ID> paramCollection) throws SQLException {
         StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         int result = 0;
         try {
             db.beginTransaction();
-            for (T t : paramCollection) {
-                result = result + db.delete(mTableName, DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + DatabaseUtils.getIdValue(t)});
+            for (String[] args : splitIds(paramCollection)) {
+                result = result + db.delete(mTableName, makeIdInSelection(args.length), args);
             }
             db.setTransactionSuccessful();
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
         } finally {
             db.endTransaction();
+            for (ID id : paramCollection) {
+                evictCache(id);
+            }
+            StrictMode.setThreadPolicy(oldPolicy);
         }
-        StrictMode.setThreadPolicy(oldPolicy);
+        notifyChanged();
         return result;
     }
 
-    @Override
-    public int delete(DeleteBuilder deleteBuilder) throws SQLException {
-        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        int result = db.delete(mTableName, deleteBuilder.getWhere(), deleteBuilder.getWhereArgs());
-        return result;
+    private String makeIdInSelection(int count) {
+        return mMapping.getIdColumnName() + " in(" + DatabaseUtils.makePlaceholders(count) + ")";
     }
 
-    @Override
-    public int deleteById(ID paramID) throws SQLException {
-        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        int result = db.delete(mTableName, DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + paramID});
-        return result;
+    /**
+     * 将主键集合拆分为多组参数，每组不超过MAX_IN_ARGS个，避免超过sqlite的参数个数限制
+     */
+    private List<String[]> splitIds(Collection<ID> ids) {
+        List<String[]> groups = new ArrayList<String[]>();
+        String[] args = null;
+        int index = 0;
+        int remaining = ids.size();
+        for (ID id : ids) {
+            if (args == null) {
+                args = new String[Math.min(remaining, MAX_IN_ARGS)];
+                index = 0;
+            }
+            args[index++] = DatabaseUtils.toSqlArg(id);
+            remaining--;
+            if (index == args.length) {
+                groups.add(args);
+                args = null;
+            }
+        }
+        return groups;
     }
 
     @Override
-    public int deleteByIds(Collection<ID> paramCollection) throws SQLException {
+    public int createOrUpdate(Collection<T> paramTs) throws SQLException {
+        return executeBatch(BatchExecutor.OP_UPSERT, paramTs);
+    }
+
+    private int executeBatch(int op, Collection<?> items) throws SQLException {
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.allowThreadDiskWrites();
         SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         int result = 0;
+        int batchSize = mDatabaseHelper.getBatchSize();
+        boolean success = false;
         try {
-            for (ID id : paramCollection) {
-                result = result + db.delete(mTableName, DatabaseUtils.getIdColumnName(mClazz) + "=?", new String[]{"" + id});
-            }
+            result = mBatchExecutor.execute(db, op, items, batchSize);
+            success = true;
         } catch (Exception e) {
             throw new SQLException(mTableName + " error=" + e.getMessage());
+        } finally {
+            //分批执行时失败之前的分批已提交，同样需要通知
+            if (success || (batchSize > 0 && items.size() > batchSize)) {
+                notifyChanged();
+            }
+            //失败时之前已提交的分批也要淘汰
+            if (mEntityCache != null && op != BatchExecutor.OP_INSERT) {
+                evictCache(items);
+            }
+            StrictMode.setThreadPolicy(oldPolicy);
         }
         return result;
     }
@@ -302,7 +475,9 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
             throw new SQLException(mTableName + " error=" + e.getMessage());
         } finally {
             db.endTransaction();
+            evictAllCache();
         }
+        notifyChanged();
         return result;
     }
 
@@ -310,4 +485,160 @@ class DaoImpl<T, ID> implements Dao<T, ID> {
     public Class<T> getEntityClass() {
         return mClazz;
     }
+
+    @Override
+    public QueryObserver<T> observe(QueryBuilder queryBuilder, OnQueryChangedListener<T> listener) {
+        QueryObserver<T> observer = new QueryObserver<T>(this, queryBuilder.prepare(), listener,
+                mDatabaseHelper.getChangeTracker(), mTableName);
+        observer.start();
+        return observer;
+    }
+
+    /**
+     * 通知表数据变化，须在写操作提交之后调用，失败回滚时不调用
+     */
+    private void notifyChanged() {
+        mDatabaseHelper.getChangeTracker().notifyChanged(mTableName);
+    }
+
+    /**
+     * 统一主键类型，避免Integer与Long作为不同的键
+     */
+    private Object cacheKey(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    private T getCache(Object id) {
+        if (mEntityCache == null || id == null) {
+            return null;
+        }
+        return mEntityCache.get(cacheKey(id));
+    }
+
+    private long getCacheGeneration() {
+        if (mEntityCache == null) {
+            return 0;
+        }
+        synchronized (mEntityCache) {
+            return mCacheGeneration;
+        }
+    }
+
+    /**
+     * 写入缓存，generation之后有过淘汰(读到的可能是旧数据)时不写入
+     */
+    private void putCache(Object id, T obj, long generation) {
+        if (mEntityCache != null && id != null) {
+            synchronized (mEntityCache) {
+                if (generation == mCacheGeneration) {
+                    mEntityCache.put(cacheKey(id), obj);
+                }
+            }
+        }
+    }
+
+    /**
+     * 淘汰缓存，须在写操作提交(或失败)之后调用
+     */
+    private void evictCache(Object id) {
+        if (mEntityCache != null && id != null) {
+            synchronized (mEntityCache) {
+                mCacheGeneration++;
+                mEntityCache.remove(cacheKey(id));
+            }
+        }
+    }
+
+    private void evictCache(Collection<?> items) {
+        synchronized (mEntityCache) {
+            mCacheGeneration++;
+            for (Object item : items) {
+                try {
+                    Object id = mMapping.getIdValue(item);
+                    if (id != null) {
+                        mEntityCache.remove(cacheKey(id));
+                    }
+                } catch (IllegalAccessException e) {
+                    //无法获取主键时全部淘汰
+                    mEntityCache.evictAll();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void evictAllCache() {
+        if (mEntityCache != null) {
+            synchronized (mEntityCache) {
+                mCacheGeneration++;
+                mEntityCache.evictAll();
+            }
+        }
+    }
+
+    /**
+     * 游标迭代器，每次next只映射一行
+     */
+    private class CursorIterator implements CloseableIterator<T> {
+        private final Cursor mCursor;
+        private final int[] mIndexes;
+        private boolean mFetched;
+        private boolean mHasNext;
+
+        CursorIterator(Cursor cursor) {
+            this.mCursor = cursor;
+            this.mIndexes = mMapping.getColumnIndexes(cursor);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (mCursor.isClosed()) {
+                return false;
+            }
+            if (!mFetched) {
+                mHasNext = mCursor.moveToNext();
+                mFetched = true;
+                if (!mHasNext) {
+                    mCursor.close();
+                }
+            }
+            return mHasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            mFetched = false;
+            try {
+                return mMapping.cursorToObject(mCursor, mIndexes);
+            } catch (Exception e) {
+                close();
+                throw new SQLException(mTableName + " error=" + e.getMessage());
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        @Override
+        public void close() {
+            if (!mCursor.isClosed()) {
+                mCursor.close();
+            }
+        }
+    }
+
+    /**
+     * 释放缓存的预编译语句
+     */
+    void close() {
+        mBatchExecutor.close();
+    }
 }
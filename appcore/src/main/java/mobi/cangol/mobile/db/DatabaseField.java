@@ -58,4 +58,18 @@ public @interface DatabaseField {
      * @return
      */
     boolean unique() default false;
+
+    /**
+     * 是否为该列创建索引
+     *
+     * @return
+     */
+    boolean index() default false;
+
+    /**
+     * 索引名称，indexName相同的列按字段声明顺序组成复合索引
+     *
+     * @return
+     */
+    String indexName() default "";
 }
\ No newline at end of file
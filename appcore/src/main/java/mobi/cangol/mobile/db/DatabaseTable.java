@@ -37,4 +37,12 @@ public @interface DatabaseTable {
      * @return
      */
     String value() default "";
+
+    /**
+     * 按主键缓存的实体个数(LRU)，0表示不缓存
+     * 开启后queryForId直接返回缓存的实例，update/delete时失效
+     *
+     * @return
+     */
+    int cacheSize() default 0;
 }
\ No newline at end of file
@@ -19,10 +19,15 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import mobi.cangol.mobile.logging.Log;
 
@@ -31,52 +36,246 @@ public class DatabaseUtils {
     }
 
     /**
-     * 创建表
+     * 创建表及声明的索引
      *
      * @param db
      * @param clazz
      */
     public static void createTable(SQLiteDatabase db, Class<?> clazz) {
-        if (clazz.isAnnotationPresent(DatabaseTable.class)) {
-            StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
-            DatabaseTable table = clazz.getAnnotation(DatabaseTable.class);
-            String tableName = "".equals(table.value()) ? clazz.getSimpleName() : table.value();
-            sql.append(tableName).append('(');
-            Field[] fields = clazz.getDeclaredFields();
-            String filedName = null;
-            boolean isFirst = true;
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
-                    continue;
-                }
-                if (field.isAnnotationPresent(DatabaseField.class)) {
-
-                    if (!isFirst) {
-                        sql.append(',');
-                    } else {
-                        isFirst = false;
-                    }
+        EntityMapping<?> mapping = EntityMapping.get(clazz);
+        if (mapping.getTableName() != null) {
+            db.execSQL(buildCreateTableSql(mapping, mapping.getTableName()));
+            createIndexes(db, mapping);
+        } else {
+            throw new IllegalStateException(clazz + " not DatabaseTable Annotation");
+        }
+    }
 
-                    DatabaseField dbField = field.getAnnotation(DatabaseField.class);
-                    filedName = "".equals(dbField.value()) ? field.getName() : dbField.value();
-                    sql.append(filedName);
-                    sql.append(' ').append(getDbType(field.getType()));
-                    if (dbField.primaryKey()) {
-                        sql.append(" PRIMARY KEY AUTOINCREMENT");
-                    }
-                    if (dbField.unique()) {
-                        sql.append(" UNIQUE");
+    /**
+     * 根据注解迁移表结构，在一个事务中完成
+     * 表不存在时创建；只新增了普通列时使用ALTER TABLE ADD COLUMN；
+     * 删除了列或新增主键/唯一列时重建表并复制同名列的数据。列类型的变化不做迁移。
+     * 旧版本以"true"/"false"文本保存的boolean列转换为1/0。
+     * 最后创建注解中声明的索引
+     *
+     * @param db
+     * @param clazz
+     */
+    public static void migrateTable(SQLiteDatabase db, Class<?> clazz) {
+        EntityMapping<?> mapping = EntityMapping.get(clazz);
+        String tableName = mapping.getTableName();
+        if (tableName == null) {
+            throw new IllegalStateException(clazz + " not DatabaseTable Annotation");
+        }
+        db.beginTransaction();
+        try {
+            Set<String> existing = getColumnNames(db, tableName);
+            if (existing.isEmpty()) {
+                db.execSQL(buildCreateTableSql(mapping, tableName));
+            } else {
+                Set<String> declared = new HashSet<String>();
+                List<EntityMapping.ColumnMapping> added = new ArrayList<EntityMapping.ColumnMapping>();
+                boolean rebuild = false;
+                for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+                    declared.add(column.name.toLowerCase(Locale.US));
+                    if (!existing.contains(column.name.toLowerCase(Locale.US))) {
+                        added.add(column);
+                        if (column.primaryKey || column.dbField.unique()) {
+                            rebuild = true;
+                        }
                     }
-                    if (dbField.notNull()) {
-                        sql.append(" NOT NULL");
+                }
+                if (!declared.containsAll(existing)) {
+                    rebuild = true;
+                }
+                if (rebuild) {
+                    Log.d("migrate table " + tableName + " by copy");
+                    copyTable(db, mapping, existing);
+                } else {
+                    for (EntityMapping.ColumnMapping column : added) {
+                        Log.d("migrate table " + tableName + " add column " + column.name);
+                        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(tableName).append(" ADD COLUMN ");
+                        appendColumnDefinition(sql, column);
+                        if (column.dbField.notNull()) {
+                            //NOT NULL的新增列必须有默认值
+                            sql.append(" DEFAULT ").append(getDefaultValue(column));
+                        }
+                        db.execSQL(sql.toString());
                     }
                 }
+                migrateBooleanValues(db, mapping, existing);
+            }
+            createIndexes(db, mapping);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 旧版本boolean以"true"/"false"文本保存，现在按1/0保存和查询，
+     * 不转换的话flag=true之类的条件匹配不到旧数据
+     *
+     * @param db
+     * @param mapping
+     * @param existing 迁移前已有的列
+     */
+    private static void migrateBooleanValues(SQLiteDatabase db, EntityMapping<?> mapping, Set<String> existing) {
+        String tableName = mapping.getTableName();
+        for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+            if (column.type == EntityMapping.TYPE_BOOLEAN
+                    && existing.contains(column.name.toLowerCase(Locale.US))) {
+                db.execSQL("UPDATE " + tableName + " SET " + column.name + "=1 WHERE " + column.name + "='true'");
+                db.execSQL("UPDATE " + tableName + " SET " + column.name + "=0 WHERE " + column.name + "='false'");
+            }
+        }
+    }
+
+    /**
+     * 依次迁移多个表，在一个事务中完成
+     *
+     * @param db
+     * @param classes
+     */
+    public static void migrateTables(SQLiteDatabase db, Class<?>... classes) {
+        db.beginTransaction();
+        try {
+            for (Class<?> clazz : classes) {
+                migrateTable(db, clazz);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 重命名旧表，创建新表，复制同名列的数据，删除旧表
+     */
+    private static void copyTable(SQLiteDatabase db, EntityMapping<?> mapping, Set<String> existing) {
+        String tableName = mapping.getTableName();
+        String oldTableName = tableName + "_old";
+        db.execSQL("DROP TABLE IF EXISTS " + oldTableName);
+        db.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+        db.execSQL(buildCreateTableSql(mapping, tableName));
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+            String value;
+            if (existing.contains(column.name.toLowerCase(Locale.US))) {
+                value = column.name;
+            } else if (column.dbField.notNull() && !column.primaryKey) {
+                value = getDefaultValue(column);
+            } else {
+                continue;
+            }
+            if (columns.length() > 0) {
+                columns.append(',');
+                values.append(',');
+            }
+            columns.append(column.name);
+            values.append(value);
+        }
+        if (columns.length() > 0) {
+            db.execSQL("INSERT INTO " + tableName + "(" + columns + ") SELECT " + values + " FROM " + oldTableName);
+        }
+        db.execSQL("DROP TABLE " + oldTableName);
+    }
+
+    /**
+     * 获取表中已有的列名(小写)，表不存在时返回空集合
+     */
+    private static Set<String> getColumnNames(SQLiteDatabase db, String tableName) {
+        Set<String> columns = new HashSet<String>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int index = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(index).toLowerCase(Locale.US));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private static String buildCreateTableSql(EntityMapping<?> mapping, String tableName) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
+        sql.append(tableName).append('(');
+        boolean isFirst = true;
+        for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+            if (!isFirst) {
+                sql.append(',');
+            } else {
+                isFirst = false;
+            }
+            appendColumnDefinition(sql, column);
+        }
+        sql.append(')');
+        return sql.toString();
+    }
+
+    private static void appendColumnDefinition(StringBuilder sql, EntityMapping.ColumnMapping column) {
+        DatabaseField dbField = column.dbField;
+        sql.append(column.name);
+        sql.append(' ').append(getDbType(column.field.getType()));
+        if (dbField.primaryKey()) {
+            sql.append(" PRIMARY KEY AUTOINCREMENT");
+        }
+        if (dbField.unique()) {
+            sql.append(" UNIQUE");
+        }
+        if (dbField.notNull()) {
+            sql.append(" NOT NULL");
+        }
+    }
+
+    private static String getDefaultValue(EntityMapping.ColumnMapping column) {
+        String type = getDbType(column.field.getType());
+        if ("TEXT".equals(type)) {
+            return "''";
+        } else if ("BLOB".equals(type)) {
+            return "X''";
+        } else {
+            return "0";
+        }
+    }
+
+    /**
+     * 创建注解中声明的索引，indexName相同的列组成复合索引
+     */
+    private static void createIndexes(SQLiteDatabase db, EntityMapping<?> mapping) {
+        String tableName = mapping.getTableName();
+        Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+        for (EntityMapping.ColumnMapping column : mapping.getColumns()) {
+            DatabaseField dbField = column.dbField;
+            String indexName = null;
+            if (!"".equals(dbField.indexName())) {
+                indexName = dbField.indexName();
+            } else if (dbField.index()) {
+                indexName = "idx_" + tableName + "_" + column.name;
+            }
+            if (indexName != null) {
+                List<String> columns = indexes.get(indexName);
+                if (columns == null) {
+                    columns = new ArrayList<String>();
+                    indexes.put(indexName, columns);
+                }
+                columns.add(column.name);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : indexes.entrySet()) {
+            StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS ");
+            sql.append(entry.getKey()).append(" ON ").append(tableName).append('(');
+            List<String> columns = entry.getValue();
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sql.append(',');
+                }
+                sql.append(columns.get(i));
             }
             sql.append(')');
             db.execSQL(sql.toString());
-        } else {
-            throw new IllegalStateException(clazz + " not DatabaseTable Annotation");
         }
     }
 
@@ -87,20 +286,20 @@ public class DatabaseUtils {
      * @return
      */
     public static String getDbType(Class<?> clazz) {
-        if (clazz == String.class
-                || clazz == Character.class || clazz == char.class
-                || clazz == Boolean.class || clazz == boolean.class) {
-            return "TEXT";
-        } else if (clazz == Integer.class || clazz == int.class
-                || clazz == Long.class || clazz == long.class
-                || clazz == Short.class || clazz == short.class) {
-            return "INTEGER";
-        } else if (clazz == Double.class || clazz == double.class) {
-            return "Double";
-        } else if (clazz == Float.class || clazz == float.class) {
-            return "FLOAT";
-        } else {
-            return "BLOB";
+        switch (EntityMapping.getTypeCode(clazz)) {
+            case EntityMapping.TYPE_STRING:
+            case EntityMapping.TYPE_CHAR:
+                return "TEXT";
+            case EntityMapping.TYPE_INT:
+            case EntityMapping.TYPE_LONG:
+            case EntityMapping.TYPE_SHORT:
+            case EntityMapping.TYPE_BOOLEAN:
+                return "INTEGER";
+            case EntityMapping.TYPE_DOUBLE:
+            case EntityMapping.TYPE_FLOAT:
+                return "REAL";
+            default:
+                return "BLOB";
         }
     }
 
@@ -129,21 +328,7 @@ public class DatabaseUtils {
      * @return
      */
     public static <T> String getIdColumnName(Class<?> clazz) {
-        String columnName = null;
-        for (Field field : clazz.getDeclaredFields()) {
-            field.setAccessible(true);
-            if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
-                continue;
-            }
-            if (field.isAnnotationPresent(DatabaseField.class)) {
-                DatabaseField dbField = field.getAnnotation(DatabaseField.class);
-                if (dbField.primaryKey() == true) {
-                    columnName = "".equals(dbField.value()) ? field.getName() : dbField.value();
-                    break;
-                }
-            }
-        }
-        return columnName;
+        return EntityMapping.get(clazz).getIdColumnName();
     }
 
     /**
@@ -155,22 +340,7 @@ public class DatabaseUtils {
      * @throws IllegalArgumentException
      */
     public static Object getIdValue(Object obj) throws IllegalAccessException, IllegalArgumentException {
-        Object value = null;
-        for (Field field : obj.getClass().getDeclaredFields()) {
-            field.setAccessible(true);
-            if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
-                continue;
-            }
-
-            if (field.isAnnotationPresent(DatabaseField.class)) {
-                DatabaseField dbField = field.getAnnotation(DatabaseField.class);
-                if (dbField.primaryKey() == true) {
-                    value = field.get(obj);
-                    break;
-                }
-            }
-        }
-        return value;
+        return EntityMapping.get(obj.getClass()).getIdValue(obj);
     }
 
     /**
@@ -182,18 +352,7 @@ public class DatabaseUtils {
      * @throws IllegalArgumentException
      */
     public static ContentValues getContentValues(Object object) throws IllegalAccessException, IllegalArgumentException {
-        ContentValues v = new ContentValues();
-        for (Field field : object.getClass().getDeclaredFields()) {
-            field.setAccessible(true);
-            if (field.isAnnotationPresent(DatabaseField.class)) {
-                DatabaseField dbField = field.getAnnotation(DatabaseField.class);
-                if (!dbField.primaryKey()) {
-                    String filedName = "".equals(dbField.value()) ? field.getName() : dbField.value();
-                    v.put(filedName, String.valueOf(field.get(object)));
-                }
-            }
-        }
-        return v;
+        return EntityMapping.get(object.getClass()).getContentValues(object);
     }
 
     /**
@@ -206,21 +365,10 @@ public class DatabaseUtils {
      * @throws InstantiationException
      * @throws IllegalAccessException
      */
+    @SuppressWarnings("unchecked")
     public static <T> T cursorToObject(T obj, Cursor cursor) throws InstantiationException, IllegalAccessException {
-        Field[] fields = obj.getClass().getDeclaredFields();
-        String columnName = null;
-        for (Field field : fields) {
-            field.setAccessible(true);
-            if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
-                continue;
-            }
-            if (field.isAnnotationPresent(DatabaseField.class)) {
-                DatabaseField dbField = field.getAnnotation(DatabaseField.class);
-                columnName = "".equals(dbField.value()) ? field.getName() : dbField.value();
-                setFieldValue(obj, field, columnName, cursor);
-            }
-        }
-        return obj;
+        EntityMapping<T> mapping = (EntityMapping<T>) EntityMapping.get(obj.getClass());
+        return mapping.cursorToObject(obj, cursor, mapping.getColumnIndexes(cursor));
     }
 
     /**
@@ -236,10 +384,38 @@ public class DatabaseUtils {
      * @throws InvocationTargetException
      */
     public static <T> T cursorToObject(Class<T> clazz, Cursor cursor) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
-        Constructor constructor = clazz.getDeclaredConstructor();
-        constructor.setAccessible(true);
-        T obj = (T) constructor.newInstance();
-        return cursorToObject(obj, cursor);
+        EntityMapping<T> mapping = EntityMapping.get(clazz);
+        return mapping.cursorToObject(cursor, mapping.getColumnIndexes(cursor));
+    }
+
+    /**
+     * 转换为查询参数，boolean按存储格式转换为1/0
+     *
+     * @param value
+     * @return
+     */
+    static String toSqlArg(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? "1" : "0";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * 生成n个以逗号分隔的占位符
+     *
+     * @param count
+     * @return
+     */
+    static String makePlaceholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.toString();
     }
 
     /**
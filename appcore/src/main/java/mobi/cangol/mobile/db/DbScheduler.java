@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库任务调度器
+ * 写任务在单一写线程上串行执行，读任务在多个读线程上并行执行，读不会排在批量写之后；
+ * 队列按优先级排序，同优先级先进先出；合并key相同的任务在等待中被新任务替换。
+ *
+ * @author Cangol
+ */
+public final class DbScheduler {
+    private static final String TAG = "DbScheduler";
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int READER_COUNT = Math.max(2, Math.min(CPU_COUNT, 4));
+    private static final DbScheduler sInstance = new DbScheduler();
+
+    private final ThreadPoolExecutor mWriteExecutor;
+    private final ThreadPoolExecutor mReadExecutor;
+    private final ConcurrentHashMap<String, ScheduledTask> mPendingTasks = new ConcurrentHashMap<String, ScheduledTask>();
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final AtomicLong mSubmittedCount = new AtomicLong();
+    private final AtomicLong mExecutedCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mTotalWaitTime = new AtomicLong();
+    private final AtomicLong mMaxWaitTime = new AtomicLong();
+
+    private DbScheduler() {
+        mWriteExecutor = createExecutor("Writer", 1);
+        mReadExecutor = createExecutor("Reader", READER_COUNT);
+    }
+
+    public static DbScheduler getInstance() {
+        return sInstance;
+    }
+
+    private static ThreadPoolExecutor createExecutor(final String name, int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, TAG + "$" + name + " #" + mCount.getAndIncrement());
+            }
+        });
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param runnable
+     * @param coalesceKey 合并key，不为null时替换相同key的等待中任务
+     * @param write       是否为写任务
+     * @param priority    优先级，值越大越先执行
+     * @param onReplaced  被替换的旧任务的回调，可为null
+     * @return
+     */
+    Future<?> submit(Runnable runnable, String coalesceKey, boolean write, int priority, Runnable onReplaced) {
+        ScheduledTask task = new ScheduledTask(runnable, coalesceKey, write, priority, mSequence.getAndIncrement(), onReplaced);
+        if (coalesceKey != null) {
+            ScheduledTask old = mPendingTasks.put(coalesceKey, task);
+            if (old != null && old.cancel(false)) {
+                mCoalescedCount.incrementAndGet();
+                if (old.mOnReplaced != null) {
+                    old.mOnReplaced.run();
+                }
+            }
+        }
+        mSubmittedCount.incrementAndGet();
+        (write ? mWriteExecutor : mReadExecutor).execute(task);
+        return task;
+    }
+
+    /**
+     * 是否有合并key为coalesceKey的等待中任务
+     *
+     * @param coalesceKey
+     * @return
+     */
+    boolean hasPendingTask(String coalesceKey) {
+        return mPendingTasks.containsKey(coalesceKey);
+    }
+
+    /**
+     * 等待中的读任务数
+     *
+     * @return
+     */
+    public int getReadQueueDepth() {
+        return mReadExecutor.getQueue().size();
+    }
+
+    /**
+     * 等待中的写任务数
+     *
+     * @return
+     */
+    public int getWriteQueueDepth() {
+        return mWriteExecutor.getQueue().size();
+    }
+
+    /**
+     * 已提交的任务数
+     *
+     * @return
+     */
+    public long getSubmittedCount() {
+        return mSubmittedCount.get();
+    }
+
+    /**
+     * 已开始执行的任务数
+     *
+     * @return
+     */
+    public long getExecutedCount() {
+        return mExecutedCount.get();
+    }
+
+    /**
+     * 被合并(替换)的任务数
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * 平均排队等待时间(毫秒)
+     *
+     * @return
+     */
+    public long getAverageWaitTime() {
+        long count = mExecutedCount.get();
+        return count == 0 ? 0 : mTotalWaitTime.get() / count;
+    }
+
+    /**
+     * 最长排队等待时间(毫秒)
+     *
+     * @return
+     */
+    public long getMaxWaitTime() {
+        return mMaxWaitTime.get();
+    }
+
+    private void onTaskStart(ScheduledTask task) {
+        if (task.mCoalesceKey != null) {
+            mPendingTasks.remove(task.mCoalesceKey, task);
+        }
+        long wait = (System.nanoTime() - task.mEnqueueTime) / 1000000L;
+        mExecutedCount.incrementAndGet();
+        mTotalWaitTime.addAndGet(wait);
+        long max = mMaxWaitTime.get();
+        while (wait > max && !mMaxWaitTime.compareAndSet(max, wait)) {
+            max = mMaxWaitTime.get();
+        }
+    }
+
+    private final class ScheduledTask extends FutureTask<Object> implements Comparable<ScheduledTask> {
+        private final String mCoalesceKey;
+        private final boolean mWrite;
+        private final int mPriority;
+        private final long mSequence;
+        private final long mEnqueueTime;
+        private final Runnable mOnReplaced;
+
+        ScheduledTask(Runnable runnable, String coalesceKey, boolean write, int priority, long sequence, Runnable onReplaced) {
+            super(runnable, null);
+            this.mCoalesceKey = coalesceKey;
+            this.mWrite = write;
+            this.mPriority = priority;
+            this.mSequence = sequence;
+            this.mEnqueueTime = System.nanoTime();
+            this.mOnReplaced = onReplaced;
+        }
+
+        @Override
+        public void run() {
+            if (!isCancelled()) {
+                onTaskStart(this);
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                //取消的任务立即移出等待队列和合并表
+                if (mCoalesceKey != null) {
+                    mPendingTasks.remove(mCoalesceKey, this);
+                }
+                (mWrite ? mWriteExecutor : mReadExecutor).remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(ScheduledTask another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -26,28 +26,82 @@ import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
-import mobi.cangol.mobile.service.PoolManager;
-
 public abstract class DbTask<P, R> {
+    /**
+     * 读任务，在读线程上并行执行
+     */
+    public static final int MODE_READ = 0;
+    /**
+     * 写任务，在单一写线程上串行执行
+     */
+    public static final int MODE_WRITE = 1;
+
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
 
     private static final String TAG = "DbTask";
 
 
     private static final InternalHandler sHandler = new InternalHandler();
 
-    private static final ExecutorService sExecutor = PoolManager.buildPool(TAG, 2).getExecutorService();
-
     private static final int MESSAGE_POST_RESULT = 0x1;
     private static final int MESSAGE_POST_CANCEL = 0x3;
 
     private static final Map<String, List<WeakReference<Future<?>>>> futureMap = new WeakHashMap<String, List<WeakReference<Future<?>>>>();
     private String tag;
-
+    private String coalesceKey;
+    private int mode;
+    private int priority;
+
+    /**
+     * 兼容旧版本，普通优先级，与旧版本的2线程池一样在读线程上并行执行(MODE_READ)
+     * 任务内有写操作且需要与其他写任务串行时，请使用DbTask(tag, MODE_WRITE)
+     *
+     * @param tag
+     */
     public DbTask(String tag) {
+        this(tag, MODE_READ, PRIORITY_NORMAL);
+    }
+
+    /**
+     * @param tag
+     * @param mode MODE_READ或MODE_WRITE
+     */
+    public DbTask(String tag, int mode) {
+        this(tag, mode, PRIORITY_NORMAL);
+    }
+
+    /**
+     * @param tag
+     * @param mode     MODE_READ或MODE_WRITE
+     * @param priority 优先级，值越大越先执行
+     */
+    public DbTask(String tag, int mode, int priority) {
         this.tag = tag;
+        this.mode = mode;
+        this.priority = priority;
+    }
+
+    /**
+     * 设置合并key，相同key的任务在等待执行时被新提交的任务替换，被替换的任务回调onCancelled
+     * 默认为null，不合并；tag只用于取消，不参与合并
+     *
+     * @param coalesceKey
+     */
+    public void setCoalesceKey(String coalesceKey) {
+        this.coalesceKey = coalesceKey;
+    }
+
+    /**
+     * 获取合并key
+     *
+     * @return
+     */
+    protected String getCoalesceKey() {
+        return coalesceKey;
     }
 
     public static void cancel(String tag) {
@@ -79,7 +133,13 @@ public abstract class DbTask<P, R> {
 
     public void execute(P... params) {
         onPreExecute();
-        Future<?> future = sExecutor.submit(new DbTaskRunnable(sHandler, params));
+        Future<?> future = DbScheduler.getInstance().submit(new DbTaskRunnable(sHandler, params),
+                getCoalesceKey(), mode == MODE_WRITE, priority, new Runnable() {
+                    @Override
+                    public void run() {
+                        sHandler.obtainMessage(MESSAGE_POST_CANCEL, new AsyncTaskR<R>(DbTask.this, (R[]) null)).sendToTarget();
+                    }
+                });
         if (tag != null) {
             // Add request to request map
             List<WeakReference<Future<?>>> requestList = futureMap.get(tag);
@@ -0,0 +1,383 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体类的映射元数据，每个类只解析一次注解和字段
+ *
+ * @author Cangol
+ */
+final class EntityMapping<T> {
+    static final int TYPE_OTHER = 0;
+    static final int TYPE_STRING = 1;
+    static final int TYPE_INT = 2;
+    static final int TYPE_LONG = 3;
+    static final int TYPE_DOUBLE = 4;
+    static final int TYPE_BOOLEAN = 5;
+    static final int TYPE_FLOAT = 6;
+    static final int TYPE_SHORT = 7;
+    static final int TYPE_CHAR = 8;
+    static final int TYPE_BYTES = 9;
+
+    private static final ConcurrentHashMap<Class<?>, EntityMapping<?>> sMappings = new ConcurrentHashMap<Class<?>, EntityMapping<?>>();
+
+    private final Class<T> mClazz;
+    private final String mTableName;
+    private final int mCacheSize;
+    private final ColumnMapping[] mColumns;
+    private final ColumnMapping mIdColumn;
+    private Constructor<T> mConstructor;
+
+    private EntityMapping(Class<T> clazz) {
+        this.mClazz = clazz;
+        DatabaseTable dbTable = clazz.getAnnotation(DatabaseTable.class);
+        if (dbTable != null) {
+            this.mTableName = "".equals(dbTable.value()) ? clazz.getSimpleName() : dbTable.value();
+            this.mCacheSize = dbTable.cacheSize();
+        } else {
+            this.mTableName = null;
+            this.mCacheSize = 0;
+        }
+        List<ColumnMapping> columns = new ArrayList<ColumnMapping>();
+        ColumnMapping idColumn = null;
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                continue;
+            }
+            DatabaseField dbField = field.getAnnotation(DatabaseField.class);
+            if (dbField != null) {
+                field.setAccessible(true);
+                ColumnMapping column = new ColumnMapping(field, dbField);
+                columns.add(column);
+                if (dbField.primaryKey() && idColumn == null) {
+                    idColumn = column;
+                }
+            }
+        }
+        this.mColumns = columns.toArray(new ColumnMapping[columns.size()]);
+        this.mIdColumn = idColumn;
+    }
+
+    /**
+     * 获取类的映射，首次访问时解析并缓存
+     *
+     * @param clazz
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMapping<T> get(Class<T> clazz) {
+        EntityMapping<T> mapping = (EntityMapping<T>) sMappings.get(clazz);
+        if (mapping == null) {
+            mapping = new EntityMapping<T>(clazz);
+            EntityMapping<T> old = (EntityMapping<T>) sMappings.putIfAbsent(clazz, mapping);
+            if (old != null) {
+                mapping = old;
+            }
+        }
+        return mapping;
+    }
+
+    static int getTypeCode(Class<?> clazz) {
+        if (clazz == String.class) {
+            return TYPE_STRING;
+        } else if (clazz == Integer.class || clazz == int.class) {
+            return TYPE_INT;
+        } else if (clazz == Long.class || clazz == long.class) {
+            return TYPE_LONG;
+        } else if (clazz == Double.class || clazz == double.class) {
+            return TYPE_DOUBLE;
+        } else if (clazz == Boolean.class || clazz == boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (clazz == Float.class || clazz == float.class) {
+            return TYPE_FLOAT;
+        } else if (clazz == Short.class || clazz == short.class) {
+            return TYPE_SHORT;
+        } else if (clazz == Character.class || clazz == char.class) {
+            return TYPE_CHAR;
+        } else if (clazz == byte[].class) {
+            return TYPE_BYTES;
+        } else {
+            return TYPE_OTHER;
+        }
+    }
+
+    /**
+     * 按值的运行时类型绑定参数，null绑定为NULL
+     *
+     * @param program
+     * @param index   从1开始
+     * @param value
+     */
+    static void bindObject(SQLiteProgram program, int index, Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            program.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else {
+            program.bindString(index, String.valueOf(value));
+        }
+    }
+
+    Class<T> getEntityClass() {
+        return mClazz;
+    }
+
+    String getTableName() {
+        return mTableName;
+    }
+
+    int getCacheSize() {
+        return mCacheSize;
+    }
+
+    ColumnMapping[] getColumns() {
+        return mColumns;
+    }
+
+    ColumnMapping getIdColumn() {
+        return mIdColumn;
+    }
+
+    String getIdColumnName() {
+        return mIdColumn == null ? null : mIdColumn.name;
+    }
+
+    Object getIdValue(Object obj) throws IllegalAccessException, IllegalArgumentException {
+        return mIdColumn == null ? null : mIdColumn.field.get(obj);
+    }
+
+    /**
+     * 创建实体实例
+     *
+     * @return
+     */
+    T newInstance() throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        Constructor<T> constructor = mConstructor;
+        if (constructor == null) {
+            constructor = mClazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            mConstructor = constructor;
+        }
+        return constructor.newInstance();
+    }
+
+    /**
+     * 解析游标中各列的索引，每个游标只需调用一次
+     *
+     * @param cursor
+     * @return 与getColumns()一一对应，-1表示游标中无此列
+     */
+    int[] getColumnIndexes(Cursor cursor) {
+        int[] indexes = new int[mColumns.length];
+        for (int i = 0; i < mColumns.length; i++) {
+            indexes[i] = cursor.getColumnIndex(mColumns[i].name);
+        }
+        return indexes;
+    }
+
+    /**
+     * 获取键值对象(不含主键)
+     *
+     * @param obj
+     * @return
+     */
+    ContentValues getContentValues(Object obj) throws IllegalAccessException, IllegalArgumentException {
+        ContentValues v = new ContentValues(mColumns.length);
+        for (ColumnMapping column : mColumns) {
+            if (!column.primaryKey) {
+                column.putValue(v, obj);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * 将当前记录的值赋值给obj
+     *
+     * @param obj
+     * @param cursor
+     * @param indexes getColumnIndexes的返回值
+     * @return
+     */
+    T cursorToObject(T obj, Cursor cursor, int[] indexes) throws IllegalAccessException {
+        for (int i = 0; i < mColumns.length; i++) {
+            if (indexes[i] != -1) {
+                mColumns[i].setValue(obj, cursor, indexes[i]);
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * 将当前记录转换为新的实体实例
+     *
+     * @param cursor
+     * @param indexes getColumnIndexes的返回值
+     * @return
+     */
+    T cursorToObject(Cursor cursor, int[] indexes) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        return cursorToObject(newInstance(), cursor, indexes);
+    }
+
+    /**
+     * 列的映射
+     */
+    static final class ColumnMapping {
+        final Field field;
+        final String name;
+        final int type;
+        final boolean primaryKey;
+        final DatabaseField dbField;
+
+        ColumnMapping(Field field, DatabaseField dbField) {
+            this.field = field;
+            this.dbField = dbField;
+            this.name = "".equals(dbField.value()) ? field.getName() : dbField.value();
+            this.type = getTypeCode(field.getType());
+            this.primaryKey = dbField.primaryKey();
+        }
+
+        /**
+         * 绑定字段值到预编译语句
+         *
+         * @param program
+         * @param index   从1开始
+         * @param obj
+         */
+        void bindValue(SQLiteProgram program, int index, Object obj) throws IllegalAccessException {
+            bindObject(program, index, field.get(obj));
+        }
+
+        /**
+         * 按字段类型写入键值对象，null写入NULL
+         *
+         * @param values
+         * @param obj
+         */
+        void putValue(ContentValues values, Object obj) throws IllegalAccessException {
+            Object value = field.get(obj);
+            if (value == null) {
+                values.putNull(name);
+                return;
+            }
+            switch (type) {
+                case TYPE_STRING:
+                    values.put(name, (String) value);
+                    break;
+                case TYPE_INT:
+                    values.put(name, (Integer) value);
+                    break;
+                case TYPE_LONG:
+                    values.put(name, (Long) value);
+                    break;
+                case TYPE_DOUBLE:
+                    values.put(name, (Double) value);
+                    break;
+                case TYPE_BOOLEAN:
+                    values.put(name, ((Boolean) value) ? 1 : 0);
+                    break;
+                case TYPE_FLOAT:
+                    values.put(name, (Float) value);
+                    break;
+                case TYPE_SHORT:
+                    values.put(name, (Short) value);
+                    break;
+                case TYPE_BYTES:
+                    values.put(name, (byte[]) value);
+                    break;
+                default:
+                    values.put(name, String.valueOf(value));
+                    break;
+            }
+        }
+
+        /**
+         * 按字段类型读取当前记录的值，NULL对包装类型赋值null，对基本类型保持默认值
+         *
+         * @param obj
+         * @param cursor
+         * @param index
+         */
+        void setValue(Object obj, Cursor cursor, int index) throws IllegalAccessException {
+            if (cursor.isNull(index)) {
+                if (!field.getType().isPrimitive()) {
+                    field.set(obj, null);
+                }
+                return;
+            }
+            switch (type) {
+                case TYPE_STRING:
+                    field.set(obj, cursor.getString(index));
+                    break;
+                case TYPE_INT:
+                    field.set(obj, cursor.getInt(index));
+                    break;
+                case TYPE_LONG:
+                    field.set(obj, cursor.getLong(index));
+                    break;
+                case TYPE_DOUBLE:
+                    field.set(obj, cursor.getDouble(index));
+                    break;
+                case TYPE_BOOLEAN:
+                    if (cursor.getType(index) == Cursor.FIELD_TYPE_STRING) {
+                        //兼容旧版本以"true"/"false"文本保存的数据
+                        String value = cursor.getString(index);
+                        field.set(obj, "true".equalsIgnoreCase(value) || "1".equals(value));
+                    } else {
+                        field.set(obj, cursor.getInt(index) != 0);
+                    }
+                    break;
+                case TYPE_FLOAT:
+                    field.set(obj, cursor.getFloat(index));
+                    break;
+                case TYPE_SHORT:
+                    field.set(obj, cursor.getShort(index));
+                    break;
+                case TYPE_CHAR:
+                    String text = cursor.getString(index);
+                    if (text != null && text.length() > 0) {
+                        field.set(obj, text.charAt(0));
+                    }
+                    break;
+                case TYPE_BYTES:
+                    field.set(obj, cursor.getBlob(index));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
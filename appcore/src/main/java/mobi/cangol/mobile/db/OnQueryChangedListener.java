@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import java.util.List;
+
+/**
+ * 查询结果变化监听，在后台线程回调
+ *
+ * @author Cangol
+ */
+public interface OnQueryChangedListener<T> {
+
+    /**
+     * 表数据变化后重新查询的结果，注册时会回调一次初始结果
+     *
+     * @param result
+     */
+    void onChanged(List<T> result);
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+/**
+ * 预编译查询，由QueryBuilder.prepare()生成，不可变，可跨线程复用
+ * 查询条件只拼接一次，每次执行只需重新绑定参数
+ *
+ * @author Cangol
+ */
+public final class PreparedQuery {
+    private final boolean distinctValue;
+    private final String table;
+    private final String selection;
+    private final String[] selectionArgs;
+    private final String groupByValue;
+    private final String havingValue;
+    private final String orderByValue;
+    private final String limitValue;
+
+    PreparedQuery(boolean distinct, String table, String selection, String[] selectionArgs,
+                  String groupBy, String having, String orderBy, String limit) {
+        this.distinctValue = distinct;
+        this.table = table;
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        this.groupByValue = groupBy;
+        this.havingValue = having;
+        this.orderByValue = orderBy;
+        this.limitValue = limit;
+    }
+
+    /**
+     * 绑定参数，无参数时使用构建时的条件值
+     *
+     * @param args 依次对应查询条件中的占位符，like查询需自行带上%
+     * @return
+     */
+    String[] bind(Object... args) {
+        if (args == null || args.length == 0) {
+            return selectionArgs;
+        }
+        if (args.length != selectionArgs.length) {
+            throw new IllegalArgumentException("expected " + selectionArgs.length + " args but was " + args.length);
+        }
+        String[] result = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = DatabaseUtils.toSqlArg(args[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 获取占位符个数
+     *
+     * @return
+     */
+    public int getArgCount() {
+        return selectionArgs.length;
+    }
+
+    boolean isDistinctValue() {
+        return distinctValue;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    String getSelection() {
+        return selection;
+    }
+
+    String getGroupByValue() {
+        return groupByValue;
+    }
+
+    String getHavingValue() {
+        return havingValue;
+    }
+
+    String getOrderByValue() {
+        return orderByValue;
+    }
+
+    String getLimitValue() {
+        return limitValue;
+    }
+}
@@ -16,6 +16,8 @@
 package mobi.cangol.mobile.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -40,7 +42,7 @@ public class QueryBuilder {
     public QueryBuilder(Class<?> clazz) {
 
         mDbtable = clazz.getAnnotation(DatabaseTable.class);
-        table = mDbtable.value();
+        table = EntityMapping.get(clazz).getTableName();
 
         paraKey = new ArrayList<String>();
         paraValue = new ArrayList<Object>();
@@ -86,8 +88,16 @@ public class QueryBuilder {
                 paraKey.add(pName + " like ?");
                 paraValue.add(pValue + "%");
             } else if (pType.equals("in")) {
-                //in查询无法用占位符，只能直接拼成sql
-                paraKey.add(pName + " in(" + pValue + ")");
+                if (pValue instanceof Collection) {
+                    paraKey.add(pName + " in(" + DatabaseUtils.makePlaceholders(((Collection<?>) pValue).size()) + ")");
+                    paraValue.addAll((Collection<?>) pValue);
+                } else if (pValue instanceof Object[]) {
+                    paraKey.add(pName + " in(" + DatabaseUtils.makePlaceholders(((Object[]) pValue).length) + ")");
+                    paraValue.addAll(Arrays.asList((Object[]) pValue));
+                } else {
+                    //字符串形式的in查询直接拼成sql
+                    paraKey.add(pName + " in(" + pValue + ")");
+                }
             } else if (pType.equals("=")) {
                 paraKey.add(pName + "=?");
                 paraValue.add(pValue);
@@ -132,12 +142,35 @@ public class QueryBuilder {
     public void addQuery(String pName, Object pValue1, Object pValue2, String pType, boolean isOr) {
         if (pName != null && !"".equals(pName) && !"".equals(String.valueOf(pValue1)) && !"".equals(String.valueOf(pValue2))) {
             if (pType.equals("between")) {
-                paraKey.add(pName + " between " + pValue1 + " and " + pValue2);
+                paraKey.add(pName + " between ? and ?");
+                paraValue.add(pValue1);
+                paraValue.add(pValue2);
             }
             condList.add(isOr ? " or " : " and ");
         }
     }
 
+    /**
+     * 添加in条件，每个值使用一个占位符
+     *
+     * @param pName
+     * @param pValues
+     * @param isOr
+     */
+    public void addInQuery(String pName, Collection<?> pValues, boolean isOr) {
+        addQuery(pName, pValues, "in", isOr);
+    }
+
+    /**
+     * 生成预编译查询，之后对本对象的修改不影响已生成的PreparedQuery
+     *
+     * @return
+     */
+    public PreparedQuery prepare() {
+        return new PreparedQuery(distinctValue, table, getSelection(), getSelectionArgs(),
+                groupByValue, havingValue, orderByValue, getLimitValue());
+    }
+
     protected String getSelection() {
         StringBuffer sql = new StringBuffer();
         if (paraKey != null) {
@@ -160,8 +193,7 @@ public class QueryBuilder {
         if (paraValue != null) {
             String[] args = new String[paraValue.size()];
             for (int i = 0; i < paraValue.size(); i++) {
-                paraKey.get(i);
-                args[i] = String.valueOf(paraValue.get(i));
+                args[i] = DatabaseUtils.toSqlArg(paraValue.get(i));
             }
             return args;
         } else {
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import android.database.SQLException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mobi.cangol.mobile.logging.Log;
+
+/**
+ * 查询观察者，由Dao.observe返回
+ * 表发生变化后在后台线程节流重新查询，表版本号未变化时不查询，不再需要时调用cancel
+ *
+ * @author Cangol
+ */
+public final class QueryObserver<T> {
+    /**
+     * 节流间隔(毫秒)，首次变化后延时查询一次，期间的后续变化合并到这次查询，不会推迟查询
+     */
+    static final long THROTTLE_DELAY = 100L;
+
+    private final Dao<T, ?> mDao;
+    private final PreparedQuery mQuery;
+    private final OnQueryChangedListener<T> mListener;
+    private final TableChangeTracker mTracker;
+    private final String mTable;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private volatile boolean mCancelled;
+    private long mLastVersion = -1;
+    private final Runnable mTask = new Runnable() {
+        @Override
+        public void run() {
+            requery();
+        }
+    };
+
+    QueryObserver(Dao<T, ?> dao, PreparedQuery query, OnQueryChangedListener<T> listener, TableChangeTracker tracker, String table) {
+        this.mDao = dao;
+        this.mQuery = query;
+        this.mListener = listener;
+        this.mTracker = tracker;
+        this.mTable = table;
+    }
+
+    void start() {
+        mTracker.register(mTable, this);
+        mScheduled.set(true);
+        mTracker.getHandler().post(mTask);
+    }
+
+    void schedule() {
+        if (!mCancelled && mScheduled.compareAndSet(false, true)) {
+            mTracker.getHandler().postDelayed(mTask, THROTTLE_DELAY);
+        }
+    }
+
+    private void requery() {
+        mScheduled.set(false);
+        if (mCancelled) {
+            return;
+        }
+        long version = mTracker.getVersion(mTable);
+        if (version == mLastVersion) {
+            return;
+        }
+        mLastVersion = version;
+        try {
+            List<T> result = mDao.query(mQuery);
+            if (!mCancelled) {
+                mListener.onChanged(result);
+            }
+        } catch (SQLException e) {
+            Log.e(mTable + " observe error=" + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止观察
+     */
+    public void cancel() {
+        mCancelled = true;
+        mTracker.unregister(mTable, this);
+        mTracker.getHandler().removeCallbacks(mTask);
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.db;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表变化跟踪，每张表维护一个版本号，Dao的写操作递增版本号并通知观察者
+ *
+ * @author Cangol
+ */
+final class TableChangeTracker {
+    private static final String TAG = "TableChangeTracker";
+    private final ConcurrentHashMap<String, AtomicLong> mVersions = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentHashMap<String, List<QueryObserver<?>>> mObservers = new ConcurrentHashMap<String, List<QueryObserver<?>>>();
+    private Handler mHandler;
+
+    private AtomicLong getCounter(String table) {
+        AtomicLong counter = mVersions.get(table);
+        if (counter == null) {
+            counter = new AtomicLong();
+            AtomicLong old = mVersions.putIfAbsent(table, counter);
+            if (old != null) {
+                counter = old;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 获取表的版本号
+     *
+     * @param table
+     * @return
+     */
+    long getVersion(String table) {
+        return getCounter(table).get();
+    }
+
+    /**
+     * 表数据发生变化
+     *
+     * @param table
+     */
+    void notifyChanged(String table) {
+        if (table == null) {
+            return;
+        }
+        getCounter(table).incrementAndGet();
+        List<QueryObserver<?>> observers = mObservers.get(table);
+        if (observers != null) {
+            for (QueryObserver<?> observer : observers) {
+                observer.schedule();
+            }
+        }
+    }
+
+    void register(String table, QueryObserver<?> observer) {
+        List<QueryObserver<?>> observers = mObservers.get(table);
+        if (observers == null) {
+            observers = new CopyOnWriteArrayList<QueryObserver<?>>();
+            List<QueryObserver<?>> old = mObservers.putIfAbsent(table, observers);
+            if (old != null) {
+                observers = old;
+            }
+        }
+        observers.add(observer);
+    }
+
+    void unregister(String table, QueryObserver<?> observer) {
+        List<QueryObserver<?>> observers = mObservers.get(table);
+        if (observers != null) {
+            observers.remove(observer);
+        }
+    }
+
+    /**
+     * 观察者重新查询所在的后台线程
+     *
+     * @return
+     */
+    synchronized Handler getHandler() {
+        if (mHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        return mHandler;
+    }
+}
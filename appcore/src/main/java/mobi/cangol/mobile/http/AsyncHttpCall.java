@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 基于Call.enqueue的异步请求，由OkHttp的Dispatcher控制并发，不占用线程池线程
+ * 重试由回调驱动：失败后按RetryHandler判断，延时后重新enqueue
+ *
+ * @author Cangol
+ */
+class AsyncHttpCall implements Callback, Future<Object> {
+    private final AsyncHttpClient client;
+    private final OkHttpClient content;
+    private final Request request;
+    private final AsyncHttpResponseHandler responseHandler;
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private final AtomicBoolean done = new AtomicBoolean();
+    private boolean isBinaryRequest;
+    private int executionCount;
+    private volatile boolean cancelled;
+    private volatile Call call;
+
+    public AsyncHttpCall(AsyncHttpClient client, OkHttpClient content, Request request, AsyncHttpResponseHandler responseHandler) {
+        this.client = client;
+        this.content = content;
+        this.request = request;
+        this.responseHandler = responseHandler;
+        if (responseHandler instanceof BinaryHttpResponseHandler) {
+            this.isBinaryRequest = true;
+        }
+    }
+
+    /**
+     * 开始请求
+     */
+    void start() {
+        if (responseHandler != null) {
+            responseHandler.sendStartMessage();
+        }
+        enqueue();
+    }
+
+    private void enqueue() {
+        if (cancelled) {
+            return;
+        }
+        Call newCall = client.getCallTracker().newCall(content, request);
+        call = newCall;
+        newCall.enqueue(this);
+        //enqueue与cancel并发时，保证新的call也被取消
+        if (cancelled) {
+            newCall.cancel();
+        }
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) throws IOException {
+        try {
+            dispatchResponse(call, response);
+        } finally {
+            //读取完响应体后才结束，期间仍可被取消
+            client.getCallTracker().finished(call);
+        }
+    }
+
+    private void dispatchResponse(Call call, Response response) {
+        if (cancelled || call.isCanceled()) {
+            response.close();
+            complete();
+            return;
+        }
+        try {
+            if (responseHandler != null) {
+                responseHandler.sendResponseMessage(response);
+            }
+        } catch (NullPointerException e) {
+            // 与AsyncHttpRequest一致，NPE按IOException重试
+            response.close();
+            handleFailure(new IOException("NPE in HttpClient" + e.getMessage()));
+            return;
+        } catch (RuntimeException e) {
+            // 不能抛到OkHttp的Dispatcher线程
+            response.close();
+            sendFailure(e);
+            complete();
+            return;
+        }
+        if (responseHandler != null) {
+            responseHandler.sendFinishMessage();
+        }
+        complete();
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        client.getCallTracker().finished(call);
+        if (cancelled || call.isCanceled()) {
+            complete();
+            return;
+        }
+        handleFailure(e);
+    }
+
+    /**
+     * 请求失败，按RetryHandler判断是否重试
+     *
+     * @param e
+     */
+    private void handleFailure(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof SocketException) {
+            if (responseHandler != null) {
+                responseHandler.sendFailureMessage(e, "can't resolve host");
+                responseHandler.sendFinishMessage();
+            }
+            complete();
+        } else if (client.getRetryHandler().shouldRetry(e, ++executionCount)) {
+            RetryScheduler.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    enqueue();
+                }
+            }, client.getRetryHandler().getRetryDelay(), TimeUnit.MILLISECONDS);
+        } else {
+            // no retries left, crap out with exception
+            ConnectException ex = new ConnectException();
+            ex.initCause(e);
+            sendFailure(ex);
+            complete();
+        }
+    }
+
+    private void sendFailure(Throwable e) {
+        if (responseHandler != null) {
+            responseHandler.sendFinishMessage();
+            if (this.isBinaryRequest) {
+                responseHandler.sendFailureMessage(e, (byte[]) null);
+            } else {
+                responseHandler.sendFailureMessage(e, (String) null);
+            }
+        }
+    }
+
+    private void complete() {
+        if (done.compareAndSet(false, true)) {
+            doneLatch.countDown();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (done.get()) {
+            return false;
+        }
+        cancelled = true;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+        complete();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.get();
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+        doneLatch.await();
+        return null;
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!doneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return null;
+    }
+
+    /**
+     * 延时重试的调度线程，只负责重新enqueue，不执行请求
+     */
+    private static final class RetryScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AsyncHttpCall$Retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -18,18 +18,24 @@ package mobi.cangol.mobile.http;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import mobi.cangol.mobile.logging.Log;
 import mobi.cangol.mobile.service.PoolManager;
 import mobi.cangol.mobile.service.PoolManager.Pool;
-import okhttp3.Call;
+import mobi.cangol.mobile.service.status.StatusService;
+import okhttp3.CacheControl;
 import okhttp3.FormBody;
 import okhttp3.Headers;
 import okhttp3.MediaType;
@@ -45,16 +51,22 @@ import okhttp3.RequestBody;
 public class AsyncHttpClient {
     private final static String TAG = "AsyncHttpClient";
     private final static int DEFAULT_RETRY_TIMES = 3;
-    private final OkHttpClient httpClient;
+    private OkHttpClient httpClient;
     private final Map<Object, List<WeakReference<Future<?>>>> requestMap;
 
     private Pool threadPool;
     private RetryHandler retryHandler;
     private String group;
+    private boolean nativeAsync;
+    private StatusService statusService;
+    private boolean coalesceRequests;
+    private final ConcurrentHashMap<String, CoalescedRequest> inFlightRequests = new ConcurrentHashMap<String, CoalescedRequest>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final CallTracker callTracker = new CallTracker();
 
     private AsyncHttpClient(String group) {
         this.group = group;
-        this.httpClient = HttpClientFactory.createDefaultHttpClient();
+        this.httpClient = HttpClientFactory.getHttpClient(group);
         this.threadPool = PoolManager.getPool(group);
         this.requestMap = new WeakHashMap<Object, List<WeakReference<Future<?>>>>();
         this.retryHandler = new RetryHandler(DEFAULT_RETRY_TIMES);
@@ -100,11 +112,95 @@ public class AsyncHttpClient {
         this.threadPool = pool;
     }
 
+    /**
+     * 设置是否使用OkHttp的Dispatcher异步执行(Call.enqueue)，
+     * 开启后请求不再占用线程池线程，并发数由setMaxRequests控制
+     *
+     * @param nativeAsync
+     */
+    public void setNativeAsync(boolean nativeAsync) {
+        this.nativeAsync = nativeAsync;
+    }
+
+    /**
+     * 开启分组的磁盘http缓存，同一分组的实例共用
+     * 遵循Cache-Control，过期后以If-None-Match/If-Modified-Since重新验证，未修改时只消耗一次304
+     *
+     * @param directory 缓存目录
+     * @param maxSize   缓存大小(字节)
+     */
+    public void setHttpCache(File directory, long maxSize) {
+        this.httpClient = HttpClientFactory.enableHttpCache(group, directory, maxSize);
+    }
+
+    /**
+     * 设置离线优先，无网络时GET请求直接使用缓存(包括已过期的)，不发起网络请求
+     * 需先调用setHttpCache，statusService为null时关闭
+     *
+     * @param statusService
+     */
+    public void setOfflineFirst(StatusService statusService) {
+        this.statusService = statusService;
+    }
+
+    /**
+     * 删除http缓存
+     */
+    public void clearHttpCache() {
+        if (httpClient.cache() != null) {
+            try {
+                httpClient.cache().evictAll();
+            } catch (IOException e) {
+                Log.e(TAG, "clearHttpCache " + e);
+            }
+        }
+    }
+
+    /**
+     * 设置是否合并本实例相同的进行中GET请求(方法+url+请求头相同)，默认关闭
+     * 合并后只发起一次网络请求，所有ResponseHandler都收到同一个响应；
+     * StreamHttpResponseHandler需要独占响应流，不参与合并
+     *
+     * @param coalesceRequests
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /**
+     * 本实例被合并到进行中请求的请求数
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * 设置Dispatcher的最大并发请求数，Dispatcher由所有派生自根 HttpClient 的实例共享
+     *
+     * @param maxRequests        总的最大并发数
+     * @param maxRequestsPerHost 每个host的最大并发数
+     */
+    public void setMaxRequests(int maxRequests, int maxRequestsPerHost) {
+        httpClient.dispatcher().setMaxRequests(maxRequests);
+        httpClient.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
     /**
      * 获取RetryHandler
      *
      * @return
      */
+    /**
+     * 本实例发起的未完成的Call
+     *
+     * @return
+     */
+    CallTracker getCallTracker() {
+        return callTracker;
+    }
+
     protected RetryHandler getRetryHandler() {
         return retryHandler;
     }
@@ -415,7 +511,16 @@ public class AsyncHttpClient {
     }
 
     protected void sendRequest(OkHttpClient client, Request uriRequest, AsyncHttpResponseHandler responseHandler, Object context) {
-        Future<?> request = threadPool.submit(new AsyncHttpRequest(this, client, uriRequest, responseHandler));
+        if (statusService != null && "GET".equals(uriRequest.method()) && !statusService.isConnection()) {
+            uriRequest = uriRequest.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+        }
+        Future<?> request;
+        if (coalesceRequests && "GET".equals(uriRequest.method())
+                && !(responseHandler instanceof StreamHttpResponseHandler)) {
+            request = sendCoalescedRequest(client, uriRequest, responseHandler);
+        } else {
+            request = submitRequest(client, uriRequest, responseHandler);
+        }
         if (context != null) {
             // Add request to request map
             List<WeakReference<Future<?>>> requestList = requestMap.get(context);
@@ -427,6 +532,50 @@ public class AsyncHttpClient {
         }
     }
 
+    private Future<?> submitRequest(OkHttpClient client, Request uriRequest, AsyncHttpResponseHandler responseHandler) {
+        if (nativeAsync) {
+            AsyncHttpCall call = new AsyncHttpCall(this, client, uriRequest, responseHandler);
+            call.start();
+            return call;
+        } else {
+            return threadPool.submit(new AsyncHttpRequest(this, client, uriRequest, responseHandler));
+        }
+    }
+
+    /**
+     * 发送可合并的请求，有相同的进行中请求时加入它，否则发起新的请求
+     *
+     * @param client
+     * @param uriRequest
+     * @param responseHandler
+     * @return
+     */
+    private Future<?> sendCoalescedRequest(OkHttpClient client, Request uriRequest, AsyncHttpResponseHandler responseHandler) {
+        //setHttpCache会更换client，不同client的请求不合并
+        String key = System.identityHashCode(client) + " " + uriRequest.method() + ' ' + uriRequest.url() + '\n' + uriRequest.headers();
+        while (true) {
+            CoalescedRequest coalescedRequest = inFlightRequests.get(key);
+            if (coalescedRequest == null) {
+                coalescedRequest = new CoalescedRequest(key, inFlightRequests, client);
+                if (inFlightRequests.putIfAbsent(key, coalescedRequest) != null) {
+                    continue;
+                }
+                Future<?> request = coalescedRequest.join(responseHandler);
+                //共用的请求不使用任何context作为tag，只能通过所有加入者的Future取消
+                Request sharedRequest = uriRequest.newBuilder().tag(coalescedRequest).build();
+                coalescedRequest.setFuture(submitRequest(client, sharedRequest, coalescedRequest));
+                return request;
+            }
+            Future<?> request = coalescedRequest.join(responseHandler);
+            if (request != null) {
+                coalescedCount.incrementAndGet();
+                return request;
+            }
+            //已开始分发响应，不能再加入
+            inFlightRequests.remove(key, coalescedRequest);
+        }
+    }
+
     /**
      * 取消请求
      *
@@ -445,24 +594,26 @@ public class AsyncHttpClient {
             }
         }
         requestMap.remove(context);
-
-        for (Call call : httpClient.dispatcher().queuedCalls()) {
-            if (call.request().tag().equals(group)) {
-                call.cancel();
-            }
-        }
-        for (Call call : httpClient.dispatcher().runningCalls()) {
-            if (call.request().tag().equals(group)) {
-                call.cancel();
-            }
-        }
+        //Dispatcher是进程共享的，只取消本实例发起的请求
+        callTracker.cancel(Arrays.asList(context, group));
     }
 
     /**
      * 取消所有
      */
     public void cancelAll() {
-        httpClient.dispatcher().cancelAll();
+        HashSet<Object> tags = new HashSet<Object>(requestMap.keySet());
+        tags.add(group);
+        for (List<WeakReference<Future<?>>> requestList : requestMap.values()) {
+            for (WeakReference<Future<?>> requestRef : requestList) {
+                Future<?> request = requestRef.get();
+                if (request != null) {
+                    request.cancel(true);
+                }
+            }
+        }
+        requestMap.clear();
+        callTracker.cancel(tags);
         threadPool.cancle(true);
     }
 }
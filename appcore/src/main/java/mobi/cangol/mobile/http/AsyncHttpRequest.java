@@ -25,6 +25,7 @@ import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -72,13 +73,19 @@ class AsyncHttpRequest implements Runnable {
 
     private void makeRequest() throws IOException {
         if (!Thread.currentThread().isInterrupted()) {
-            Response response = content.newCall(request).execute();
-            if (!Thread.currentThread().isInterrupted()) {
-                if (responseHandler != null) {
-                    responseHandler.sendResponseMessage(response);
+            CallTracker callTracker = client.getCallTracker();
+            Call call = callTracker.newCall(content, request);
+            try {
+                Response response = call.execute();
+                if (!Thread.currentThread().isInterrupted()) {
+                    if (responseHandler != null) {
+                        responseHandler.sendResponseMessage(response);
+                    }
+                } else {
+                    Log.d("AsyncHttpRequest", "Thread.isInterrupted");
                 }
-            } else {
-                Log.d("AsyncHttpRequest", "Thread.isInterrupted");
+            } finally {
+                callTracker.finished(call);
             }
         }
     }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.http;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * 记录一个client发起的未完成的Call
+ * 所有 HttpClient 共享同一个Dispatcher，按tag遍历Dispatcher会取消到其他client的请求，
+ * 各client只能通过自己的CallTracker取消自己发起的请求
+ *
+ * @author Cangol
+ */
+public final class CallTracker {
+    private final Set<Call> mCalls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+
+    /**
+     * 创建并记录Call，请求(包括读取响应体)结束后须调用finished
+     *
+     * @param client
+     * @param request
+     * @return
+     */
+    public Call newCall(OkHttpClient client, Request request) {
+        Call call = client.newCall(request);
+        mCalls.add(call);
+        return call;
+    }
+
+    /**
+     * 请求结束，不再记录
+     *
+     * @param call
+     */
+    public void finished(Call call) {
+        if (call != null) {
+            mCalls.remove(call);
+        }
+    }
+
+    /**
+     * 取消tag属于tags的请求
+     *
+     * @param tags
+     */
+    public void cancel(Collection<?> tags) {
+        for (Call call : mCalls) {
+            if (tags.contains(call.request().tag())) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * 未完成的请求数
+     *
+     * @return
+     */
+    public int size() {
+        return mCalls.size();
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+/**
+ * 合并的请求，相同的进行中请求共用一次网络请求，响应分发给所有加入的ResponseHandler
+ * 只有一个ResponseHandler时直接转交响应，多个时响应体读取一次到共享的Buffer，
+ * 每个ResponseHandler的响应体是它的clone(共享数据段，不再复制)
+ * 共用的请求以本对象为tag，只在所有加入者都取消后才取消
+ *
+ * @author Cangol
+ */
+class CoalescedRequest extends AsyncHttpResponseHandler {
+    private final String key;
+    private final ConcurrentHashMap<String, CoalescedRequest> inFlightRequests;
+    private final OkHttpClient client;
+    private final List<Member> members = new ArrayList<Member>();
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private volatile Future<?> future;
+    private boolean started;
+    private boolean closed;
+
+    CoalescedRequest(String key, ConcurrentHashMap<String, CoalescedRequest> inFlightRequests, OkHttpClient client) {
+        super();
+        this.key = key;
+        this.inFlightRequests = inFlightRequests;
+        this.client = client;
+    }
+
+    /**
+     * 加入请求
+     *
+     * @param responseHandler
+     * @return 请求已开始分发响应时返回null
+     */
+    Future<?> join(AsyncHttpResponseHandler responseHandler) {
+        Member member = new Member(responseHandler);
+        boolean sendStart;
+        synchronized (members) {
+            if (closed) {
+                return null;
+            }
+            members.add(member);
+            sendStart = started;
+        }
+        if (sendStart && responseHandler != null) {
+            responseHandler.sendStartMessage();
+        }
+        return member;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if (isAllCancelled()) {
+            cancel(true);
+        }
+    }
+
+    /**
+     * 取消共用的请求，线程池执行时Future的取消不能中断进行中的Call，需一并取消
+     */
+    private void cancel(boolean mayInterruptIfRunning) {
+        Future<?> current = future;
+        if (current != null) {
+            current.cancel(mayInterruptIfRunning);
+        }
+        HttpClientFactory.cancelCalls(client, Collections.singleton(this));
+    }
+
+    private boolean isAllCancelled() {
+        synchronized (members) {
+            for (Member member : members) {
+                if (!member.cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 不再接受新的加入，返回需要分发的成员
+     */
+    private List<AsyncHttpResponseHandler> close() {
+        List<AsyncHttpResponseHandler> handlers = new ArrayList<AsyncHttpResponseHandler>();
+        synchronized (members) {
+            if (!closed) {
+                closed = true;
+                inFlightRequests.remove(key, this);
+            }
+            for (Member member : members) {
+                if (!member.cancelled && member.responseHandler != null) {
+                    handlers.add(member.responseHandler);
+                }
+            }
+        }
+        return handlers;
+    }
+
+    @Override
+    protected void sendStartMessage() {
+        List<AsyncHttpResponseHandler> handlers = new ArrayList<AsyncHttpResponseHandler>();
+        synchronized (members) {
+            started = true;
+            for (Member member : members) {
+                if (member.responseHandler != null) {
+                    handlers.add(member.responseHandler);
+                }
+            }
+        }
+        for (AsyncHttpResponseHandler handler : handlers) {
+            handler.sendStartMessage();
+        }
+    }
+
+    @Override
+    protected void sendFinishMessage() {
+        for (AsyncHttpResponseHandler handler : close()) {
+            handler.sendFinishMessage();
+        }
+        doneLatch.countDown();
+    }
+
+    @Override
+    protected void sendFailureMessage(Throwable e, String responseBody) {
+        for (AsyncHttpResponseHandler handler : close()) {
+            if (handler instanceof BinaryHttpResponseHandler) {
+                handler.sendFailureMessage(e, (byte[]) null);
+            } else {
+                handler.sendFailureMessage(e, responseBody);
+            }
+        }
+    }
+
+    @Override
+    protected void sendFailureMessage(Throwable e, byte[] responseBody) {
+        sendFailureMessage(e, (String) null);
+    }
+
+    @Override
+    void sendResponseMessage(Response response) {
+        List<AsyncHttpResponseHandler> handlers = close();
+        if (handlers.isEmpty()) {
+            response.close();
+            return;
+        } else if (handlers.size() == 1) {
+            handlers.get(0).sendResponseMessage(response);
+            return;
+        }
+        try {
+            ResponseBody body = response.body();
+            Buffer snapshot = new Buffer();
+            body.source().readAll(snapshot);
+            long size = snapshot.size();
+            for (AsyncHttpResponseHandler handler : handlers) {
+                handler.sendResponseMessage(response.newBuilder()
+                        .body(ResponseBody.create(body.contentType(), size, snapshot.clone()))
+                        .build());
+            }
+        } catch (IOException e) {
+            for (AsyncHttpResponseHandler handler : handlers) {
+                handler.sendFailureMessage(e, response.message());
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * 加入者持有的Future，全部加入者取消后才取消网络请求
+     */
+    private final class Member implements Future<Object> {
+        private final AsyncHttpResponseHandler responseHandler;
+        private volatile boolean cancelled;
+
+        Member(AsyncHttpResponseHandler responseHandler) {
+            this.responseHandler = responseHandler;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled || isDone()) {
+                return false;
+            }
+            boolean allCancelled;
+            synchronized (members) {
+                cancelled = true;
+                allCancelled = isAllCancelled();
+                if (allCancelled) {
+                    //不再接受新的加入，后来的相同请求将重新发起
+                    closed = true;
+                    inFlightRequests.remove(key, CoalescedRequest.this);
+                }
+            }
+            if (allCancelled) {
+                CoalescedRequest.this.cancel(mayInterruptIfRunning);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || doneLatch.getCount() == 0;
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            doneLatch.await();
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!doneLatch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return null;
+        }
+    }
+}
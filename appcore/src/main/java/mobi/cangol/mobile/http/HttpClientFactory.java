@@ -16,6 +16,7 @@
 package mobi.cangol.mobile.http;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyManagementException;
@@ -27,6 +28,8 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
@@ -41,6 +44,8 @@ import javax.net.ssl.X509TrustManager;
 
 import mobi.cangol.mobile.logging.Log;
 import okhttp3.Authenticator;
+import okhttp3.Cache;
+import okhttp3.Call;
 import okhttp3.CertificatePinner;
 import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
@@ -55,25 +60,108 @@ public class HttpClientFactory {
     private final static int DEFAULT_READ_TIMEOUT = 20 * 1000;
     private final static int DEFAULT_WRITE_TIMEOUT = 20 * 1000;
 
-    private static OkHttpClient httpClient;
+    private static final ConcurrentHashMap<String, OkHttpClient> sGroupClients = new ConcurrentHashMap<String, OkHttpClient>();
+    private static OkHttpClient sRootClient;
 
     /**
-     * 创建默的 HttpClient
+     * 获取进程内共享的根 HttpClient
+     * 其他 HttpClient 都由它的newBuilder()派生，共享连接池、Dispatcher和线程，
+     * 复用连接、HTTP/2多路复用和TLS会话
      *
      * @return
      */
-    public static OkHttpClient createDefaultHttpClient() {
+    public static synchronized OkHttpClient getRootHttpClient() {
+        if (sRootClient == null) {
+            sRootClient = new OkHttpClient.Builder()
+                    .retryOnConnectionFailure(true)
+                    .followRedirects(true)
+                    .followSslRedirects(true)
+                    .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return sRootClient;
+    }
 
-        httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+    /**
+     * 由根 HttpClient 派生 Builder，build出的 HttpClient 与根共享连接池和Dispatcher
+     *
+     * @return
+     */
+    public static OkHttpClient.Builder newHttpClientBuilder() {
+        return getRootHttpClient().newBuilder();
+    }
+
+    /**
+     * 获取分组的 HttpClient，同一分组只派生一次
+     *
+     * @param group
+     * @return
+     */
+    public static OkHttpClient getHttpClient(String group) {
+        if (group == null) {
+            return createDefaultHttpClient();
+        }
+        OkHttpClient client = sGroupClients.get(group);
+        if (client == null) {
+            client = newHttpClientBuilder().build();
+            OkHttpClient old = sGroupClients.putIfAbsent(group, client);
+            if (old != null) {
+                client = old;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 为分组开启磁盘http缓存(遵循Cache-Control，使用ETag/Last-Modified条件请求重新验证)
+     * 之后getHttpClient(group)返回带缓存的 HttpClient，同一目录只能被一个Cache使用
+     *
+     * @param group
+     * @param directory 缓存目录
+     * @param maxSize   缓存大小(字节)
+     * @return
+     */
+    public static synchronized OkHttpClient enableHttpCache(String group, File directory, long maxSize) {
+        OkHttpClient client = sGroupClients.get(group);
+        if (client != null && client.cache() != null && client.cache().directory().equals(directory)) {
+            return client;
+        }
+        client = newHttpClientBuilder()
+                .cache(new Cache(directory, maxSize))
                 .build();
+        sGroupClients.put(group, client);
+        return client;
+    }
 
-        return httpClient;
+    /**
+     * 取消共享Dispatcher上所有client中tag属于tags的请求，是进程范围的取消，
+     * 只取消某个client自己的请求时使用它的CallTracker
+     *
+     * @param client
+     * @param tags
+     */
+    public static void cancelCalls(OkHttpClient client, Collection<?> tags) {
+        for (Call call : client.dispatcher().queuedCalls()) {
+            if (tags.contains(call.request().tag())) {
+                call.cancel();
+            }
+        }
+        for (Call call : client.dispatcher().runningCalls()) {
+            if (tags.contains(call.request().tag())) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * 创建默的 HttpClient
+     *
+     * @return
+     */
+    public static OkHttpClient createDefaultHttpClient() {
+        return newHttpClientBuilder().build();
     }
 
     /**
@@ -85,13 +173,7 @@ public class HttpClientFactory {
      */
     public static OkHttpClient createAuthHttpClient(final String username, final String password) {
 
-        OkHttpClient httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+        OkHttpClient httpClient = newHttpClientBuilder()
                 .authenticator(new Authenticator() {
                     @Override
                     public Request authenticate(Route route, Response response) throws IOException {
@@ -115,13 +197,7 @@ public class HttpClientFactory {
      */
     public static OkHttpClient createCertHttpClient(final String pattern, final String... pins) {
 
-        OkHttpClient httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+        OkHttpClient httpClient = newHttpClientBuilder()
                 .certificatePinner(new CertificatePinner.Builder()
                         .add(pattern, pins)
                         .build())
@@ -162,13 +238,7 @@ public class HttpClientFactory {
             Log.d(TAG, e.getMessage());
         }
 
-        OkHttpClient httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+        OkHttpClient httpClient = newHttpClientBuilder()
                 .socketFactory(sslSocketFactory)
                 .build();
 
@@ -192,13 +262,7 @@ public class HttpClientFactory {
             Log.d(TAG, e.getMessage());
         }
 
-        OkHttpClient httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+        OkHttpClient httpClient = newHttpClientBuilder()
                 .sslSocketFactory(sslSocketFactory, trustManager)
                 .hostnameVerifier(new UnSafeHostnameVerifier())
                 .build();
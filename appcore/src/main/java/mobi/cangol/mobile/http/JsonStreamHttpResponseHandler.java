@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.http;
+
+import android.content.Context;
+import android.os.Message;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import mobi.cangol.mobile.parser.JSONParserException;
+import mobi.cangol.mobile.parser.JsonUtils;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+/**
+ * 流式解析json的响应处理
+ * 在请求线程中边读边解析为JsonUtils的实体对象，只把最终的对象发送到调用线程
+ *
+ * @author Cangol
+ */
+public class JsonStreamHttpResponseHandler<T> extends StreamHttpResponseHandler {
+    protected static final int SUCCESS_MODEL_MESSAGE = 101;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final Class<T> clazz;
+    private final boolean useAnnotation;
+
+    public JsonStreamHttpResponseHandler(Class<T> clazz) {
+        this(clazz, true);
+    }
+
+    public JsonStreamHttpResponseHandler(Class<T> clazz, boolean useAnnotation) {
+        super();
+        this.clazz = clazz;
+        this.useAnnotation = useAnnotation;
+    }
+
+    public JsonStreamHttpResponseHandler(Context context, Class<T> clazz, boolean useAnnotation) {
+        super(context);
+        this.clazz = clazz;
+        this.useAnnotation = useAnnotation;
+    }
+
+    /**
+     * 响应为json object时回调
+     *
+     * @param statusCode
+     * @param response
+     */
+    public void onSuccess(int statusCode, T response) {
+    }
+
+    /**
+     * 响应为json array时回调
+     *
+     * @param statusCode
+     * @param response
+     */
+    public void onSuccess(int statusCode, List<T> response) {
+    }
+
+    @Override
+    protected void handleResponseStream(int statusCode, ResponseBody body) throws IOException {
+        MediaType contentType = body.contentType();
+        Charset charset = contentType != null ? contentType.charset(UTF_8) : UTF_8;
+        JsonReader reader = new JsonReader(new InputStreamReader(body.byteStream(), charset));
+        reader.setLenient(true);
+        try {
+            Object result;
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                result = JsonUtils.parserToList(clazz, reader, useAnnotation);
+            } else {
+                result = JsonUtils.parserToObject(clazz, reader, useAnnotation);
+            }
+            sendMessage(obtainMessage(SUCCESS_MODEL_MESSAGE, new Object[]{statusCode, result}));
+        } catch (JSONParserException e) {
+            sendFailureMessage(e, (String) null);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    protected void handleMessage(Message msg) {
+        switch (msg.what) {
+            case SUCCESS_MODEL_MESSAGE:
+                Object[] response = (Object[]) msg.obj;
+                handleSuccessModelMessage(((Integer) response[0]).intValue(), response[1]);
+                break;
+            default:
+                super.handleMessage(msg);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void handleSuccessModelMessage(int statusCode, Object result) {
+        if (result instanceof List) {
+            onSuccess(statusCode, (List<T>) result);
+        } else {
+            onSuccess(statusCode, (T) result);
+        }
+    }
+}
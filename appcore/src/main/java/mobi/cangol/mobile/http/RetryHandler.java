@@ -54,6 +54,21 @@ public class RetryHandler {
     }
 
     public boolean retryRequest(IOException exception, int executionCount) {
+        boolean retry = shouldRetry(exception, executionCount);
+        if (retry) {
+            SystemClock.sleep(getRetryDelay());
+        }
+        return retry;
+    }
+
+    /**
+     * 判断是否重试，不等待
+     *
+     * @param exception
+     * @param executionCount
+     * @return
+     */
+    public boolean shouldRetry(IOException exception, int executionCount) {
         Log.d("retryRequest", "exception:" + exception.getClass() + " executionCount=" + executionCount);
         boolean retry = true;
         if (executionCount > maxRetries) {
@@ -67,13 +82,20 @@ public class RetryHandler {
             retry = true;
         }
 
-        if (retry) {
-            SystemClock.sleep(RETRY_SLEEP_TIME_MILLIS);
-        } else {
+        if (!retry) {
             Log.d(getClass().getName(), exception.getMessage());
         }
 
         return retry;
     }
+
+    /**
+     * 重试前的等待时间(毫秒)
+     *
+     * @return
+     */
+    public long getRetryDelay() {
+        return RETRY_SLEEP_TIME_MILLIS;
+    }
 }
 
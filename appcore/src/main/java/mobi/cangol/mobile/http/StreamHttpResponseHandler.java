@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.http;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * 流式响应处理，不把响应体缓存为String/byte[]
+ * onResponseStream在请求线程中执行，处理完成后在调用线程回调onSuccess(statusCode, null)
+ *
+ * @author Cangol
+ */
+public class StreamHttpResponseHandler extends AsyncHttpResponseHandler {
+
+    public StreamHttpResponseHandler() {
+        super();
+    }
+
+    public StreamHttpResponseHandler(Context context) {
+        super(context);
+    }
+
+    /**
+     * 处理响应流(在请求线程中执行)
+     *
+     * @param source
+     * @throws IOException
+     */
+    public void onResponseStream(BufferedSource source) throws IOException {
+    }
+
+    /**
+     * 处理响应流(在请求线程中执行)
+     *
+     * @param statusCode
+     * @param source
+     * @throws IOException
+     */
+    public void onResponseStream(int statusCode, BufferedSource source) throws IOException {
+        onResponseStream(source);
+    }
+
+    /**
+     * 处理成功的响应体，子类可覆盖以发送自己的结果消息
+     *
+     * @param statusCode
+     * @param body
+     * @throws IOException
+     */
+    protected void handleResponseStream(int statusCode, ResponseBody body) throws IOException {
+        onResponseStream(statusCode, body.source());
+        sendSuccessMessage(statusCode, (String) null);
+    }
+
+    @Override
+    void sendResponseMessage(Response response) {
+        try {
+            if (response.isSuccessful()) {
+                handleResponseStream(response.code(), response.body());
+            } else {
+                sendFailureMessage(new IOException("code=" + response.code()), response.message());
+            }
+        } catch (IOException e) {
+            sendFailureMessage(e, response.message());
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package mobi.cangol.mobile.http.download;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -23,8 +25,9 @@ import java.util.WeakHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import mobi.cangol.mobile.http.CallTracker;
+import mobi.cangol.mobile.http.HttpClientFactory;
 import mobi.cangol.mobile.service.PoolManager;
-import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 
@@ -41,13 +44,11 @@ public class DownloadHttpClient {
     private OkHttpClient httpClient;
     private DownloadRetryHandler downloadRetryHandler;
     private String group;
+    private final CallTracker callTracker = new CallTracker();
 
     protected DownloadHttpClient(final String group) {
         this.group = group;
-        httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
+        httpClient = HttpClientFactory.newHttpClientBuilder()
                 .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
                 .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
@@ -78,6 +79,15 @@ public class DownloadHttpClient {
         threadPool = pool;
     }
 
+    /**
+     * 本实例发起的未完成的Call
+     *
+     * @return
+     */
+    protected CallTracker getCallTracker() {
+        return callTracker;
+    }
+
     protected DownloadRetryHandler getDownloadRetryHandler() {
         return downloadRetryHandler;
     }
@@ -135,23 +145,17 @@ public class DownloadHttpClient {
         }
         requestMap.remove(tag);
 
-        for (Call call : httpClient.dispatcher().queuedCalls()) {
-            if (call.request().tag().equals(group)) {
-                call.cancel();
-            }
-        }
-        for (Call call : httpClient.dispatcher().runningCalls()) {
-            if (call.request().tag().equals(group)) {
-                call.cancel();
-            }
-        }
+        //Dispatcher是进程共享的，只取消本实例发起的请求
+        callTracker.cancel(Arrays.asList(tag, group));
     }
 
     /**
      * 取消所有
      */
     public void cancelAll() {
-        httpClient.dispatcher().cancelAll();
+        HashSet<Object> tags = new HashSet<Object>(requestMap.keySet());
+        tags.add(group);
+        callTracker.cancel(tags);
         threadPool.cancle(true);
     }
 }
\ No newline at end of file
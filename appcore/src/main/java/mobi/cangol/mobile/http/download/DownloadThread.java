@@ -21,6 +21,8 @@ import android.util.Log;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 
+import mobi.cangol.mobile.http.CallTracker;
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -61,14 +63,20 @@ public class DownloadThread implements Runnable {
     private void makeRequest() throws IOException, InterruptedException {
         if (!Thread.currentThread().isInterrupted()) {
 
-            Response response = client.newCall(request).execute();
-            if (!Thread.currentThread().isInterrupted()) {
-                if (responseHandler != null) {
-                    responseHandler.sendResponseMessage(response, saveFile);
+            CallTracker callTracker = context.getCallTracker();
+            Call call = callTracker.newCall(client, request);
+            try {
+                Response response = call.execute();
+                if (!Thread.currentThread().isInterrupted()) {
+                    if (responseHandler != null) {
+                        responseHandler.sendResponseMessage(response, saveFile);
+                    }
+                } else {
+                    Log.d(TAG, "Thread.isInterrupted");
+                    responseHandler.sendStopMessage(from);
                 }
-            } else {
-                Log.d(TAG, "Thread.isInterrupted");
-                responseHandler.sendStopMessage(from);
+            } finally {
+                callTracker.finished(call);
             }
         } else {
             Log.d(TAG, "Thread.isInterrupted");
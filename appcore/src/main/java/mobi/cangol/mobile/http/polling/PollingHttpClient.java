@@ -19,6 +19,7 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +29,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import mobi.cangol.mobile.http.CallTracker;
+import mobi.cangol.mobile.http.HttpClientFactory;
 import mobi.cangol.mobile.service.PoolManager;
 import okhttp3.Call;
 import okhttp3.FormBody;
@@ -46,15 +49,13 @@ public class PollingHttpClient {
     private final Map<Object, List<WeakReference<Future<?>>>> requestMap;
     private OkHttpClient httpClient;
     private PoolManager.Pool threadPool;
+    private final CallTracker callTracker = new CallTracker();
 
     /**
      * 构造实例
      */
     public PollingHttpClient() {
-        httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
+        httpClient = HttpClientFactory.newHttpClientBuilder()
                 .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
                 .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
@@ -128,16 +129,8 @@ public class PollingHttpClient {
         }
         requestMap.remove(tag);
 
-        for (Call call : httpClient.dispatcher().queuedCalls()) {
-            if (call.request().tag().equals(tag)) {
-                call.cancel();
-            }
-        }
-        for (Call call : httpClient.dispatcher().runningCalls()) {
-            if (call.request().tag().equals(tag)) {
-                call.cancel();
-            }
-        }
+        //Dispatcher是进程共享的，只取消本实例发起的请求
+        callTracker.cancel(Collections.singleton(tag));
     }
 
     class HttpRequestTask implements Runnable {
@@ -165,18 +158,23 @@ public class PollingHttpClient {
                 while (exec < retryTimes) {
                     try {
                         exec++;
-                        Response response = client.newCall(request).execute();
-                        if (!Thread.currentThread().isInterrupted()) {
-                            if (responseHandler != null) {
-                                if (isSuccess = responseHandler.sendResponseMessage(response)) {
-                                    break;
-                                } else {
-                                    //
+                        Call call = callTracker.newCall(client, request);
+                        try {
+                            Response response = call.execute();
+                            if (!Thread.currentThread().isInterrupted()) {
+                                if (responseHandler != null) {
+                                    if (isSuccess = responseHandler.sendResponseMessage(response)) {
+                                        break;
+                                    } else {
+                                        //
+                                    }
                                 }
+                            } else {
+                                Log.d(TAG, "Thread.isInterrupted");
+                                break;
                             }
-                        } else {
-                            Log.d(TAG, "Thread.isInterrupted");
-                            break;
+                        } finally {
+                            callTracker.finished(call);
                         }
                         if (!Thread.currentThread().isInterrupted()) {
                             Thread.sleep(sleepTimes);
@@ -17,6 +17,7 @@ package mobi.cangol.mobile.http.route;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -26,6 +27,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import mobi.cangol.mobile.http.CallTracker;
+import mobi.cangol.mobile.http.HttpClientFactory;
 import mobi.cangol.mobile.service.PoolManager;
 import okhttp3.Call;
 import okhttp3.FormBody;
@@ -44,16 +47,14 @@ public class RouteHttpClient {
     private final Map<Object, List<WeakReference<Future<?>>>> requestMap;
     private OkHttpClient httpClient;
     private PoolManager.Pool threadPool;
+    private final CallTracker callTracker = new CallTracker();
 
     /**
      * 构造实例
      */
     public RouteHttpClient() {
 
-        httpClient = new OkHttpClient.Builder()
-                .retryOnConnectionFailure(true)
-                .followRedirects(true)
-                .followSslRedirects(true)
+        httpClient = HttpClientFactory.newHttpClientBuilder()
                 .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS)
                 .connectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
@@ -136,16 +137,8 @@ public class RouteHttpClient {
             }
         }
         requestMap.remove(tag);
-        for (Call call : httpClient.dispatcher().queuedCalls()) {
-            if (call.request().tag().equals(tag)) {
-                call.cancel();
-            }
-        }
-        for (Call call : httpClient.dispatcher().runningCalls()) {
-            if (call.request().tag().equals(tag)) {
-                call.cancel();
-            }
-        }
+        //Dispatcher是进程共享的，只取消本实例发起的请求
+        callTracker.cancel(Collections.singleton(tag));
     }
 
     class HttpRequestTask implements Runnable {
@@ -170,17 +163,22 @@ public class RouteHttpClient {
                     try {
                         request = getNewRequest(request, host[exec]);
                         exec++;
-                        Response response = client.newCall(request).execute();
-                        if (!Thread.currentThread().isInterrupted()) {
-                            if (responseHandler != null) {
-                                if (responseHandler.sendResponseMessage(response)) {
-                                    break;
-                                } else {
-                                    //
+                        Call call = callTracker.newCall(client, request);
+                        try {
+                            Response response = call.execute();
+                            if (!Thread.currentThread().isInterrupted()) {
+                                if (responseHandler != null) {
+                                    if (responseHandler.sendResponseMessage(response)) {
+                                        break;
+                                    } else {
+                                        //
+                                    }
                                 }
+                            } else {
+                                break;
                             }
-                        } else {
-                            break;
+                        } finally {
+                            callTracker.finished(call);
                         }
                     } catch (IOException e) {
                         if (exec >= host.length) {
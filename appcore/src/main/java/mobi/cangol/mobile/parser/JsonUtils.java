@@ -15,12 +15,15 @@
  */
 package mobi.cangol.mobile.parser;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -35,6 +38,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import mobi.cangol.mobile.logging.Log;
 
@@ -44,6 +48,8 @@ import mobi.cangol.mobile.logging.Log;
  */
 public class JsonUtils extends Converter {
     private final static String TAG = "JsonUtils";
+    private final static ConcurrentHashMap<Class<?>, Map<String, Field>> sFieldMaps = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+    private final static ConcurrentHashMap<Class<?>, Map<String, Field>> sAnnotationFieldMaps = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
 
     private JsonUtils() {
     }
@@ -301,6 +307,168 @@ public class JsonUtils extends Converter {
         return list;
     }
 
+    /**
+     * 从JsonReader流式解析JSONObject到 Object，不构建中间的JSONObject
+     *
+     * @param c
+     * @param reader
+     * @param useAnnotation
+     * @param <T>
+     * @return
+     * @throws JSONParserException
+     */
+    public static <T> T parserToObject(Class<T> c, JsonReader reader, boolean useAnnotation) throws JSONParserException {
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            Constructor<T> constructor = c.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            T t = constructor.newInstance();
+            Map<String, Field> fieldMap = getFieldMap(c, useAnnotation);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Field field = fieldMap.get(reader.nextName());
+                if (field == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                Object value = readField(field, reader, useAnnotation);
+                if (value != null) {
+                    field.set(t, value);
+                }
+            }
+            reader.endObject();
+            return t;
+        } catch (IOException e) {
+            throw new JSONParserException(c, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new JSONParserException(c, e.getMessage(), e);
+        } catch (InstantiationException e) {
+            throw new JSONParserException(c, "must have zero-argument constructor", e);
+        } catch (IllegalAccessException e) {
+            throw new JSONParserException(c, "constructor is not accessible", e);
+        } catch (NoSuchMethodException e) {
+            throw new JSONParserException(c, "must have zero-argument constructor", e);
+        } catch (InvocationTargetException e) {
+            throw new JSONParserException(c, "must have zero-argument constructor", e);
+        }
+    }
+
+    /**
+     * 从JsonReader流式解析JSONArray到 List，不构建中间的JSONArray
+     *
+     * @param c
+     * @param reader
+     * @param useAnnotation
+     * @param <T>
+     * @return
+     * @throws JSONParserException
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ArrayList<T> parserToList(Class<T> c, JsonReader reader, boolean useAnnotation) throws JSONParserException {
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            ArrayList<T> list = new ArrayList<T>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonToken token = reader.peek();
+                if (token == JsonToken.BEGIN_OBJECT) {
+                    list.add(parserToObject(c, reader, useAnnotation));
+                } else if (token == JsonToken.NULL || token == JsonToken.BEGIN_ARRAY || !isBaseClass(c)) {
+                    reader.skipValue();
+                } else {
+                    Object value = readValue(c, reader);
+                    if (value != null) {
+                        list.add((T) value);
+                    }
+                }
+            }
+            reader.endArray();
+            return list;
+        } catch (IOException e) {
+            throw new JSONParserException(c, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new JSONParserException(c, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取类的 字段名->字段 映射，每个类只解析一次
+     */
+    private static Map<String, Field> getFieldMap(Class<?> c, boolean useAnnotation) {
+        ConcurrentHashMap<Class<?>, Map<String, Field>> cache = useAnnotation ? sAnnotationFieldMaps : sFieldMaps;
+        Map<String, Field> fieldMap = cache.get(c);
+        if (fieldMap == null) {
+            fieldMap = new HashMap<String, Field>();
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isEnumConstant() || Modifier.isFinal(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldMap.put(getFieldName(field, useAnnotation), field);
+            }
+            cache.putIfAbsent(c, fieldMap);
+        }
+        return fieldMap;
+    }
+
+    private static Object readField(Field field, JsonReader reader, boolean useAnnotation) throws IOException, JSONParserException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Class<?> fieldClass = field.getType();
+        if (List.class.isAssignableFrom(fieldClass)) {
+            if (token == JsonToken.BEGIN_ARRAY && field.getGenericType() instanceof ParameterizedType) {
+                ParameterizedType pt = (ParameterizedType) field.getGenericType();
+                return parserToList((Class<?>) pt.getActualTypeArguments()[0], reader, useAnnotation);
+            }
+        } else if (field.getGenericType() instanceof TypeVariable) {
+            //与parserToObject(Class,JSONObject,boolean)一致，不解析泛型字段
+        } else if (isBaseClass(fieldClass)) {
+            if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY) {
+                return readValue(fieldClass, reader);
+            }
+        } else if (token == JsonToken.BEGIN_OBJECT) {
+            return parserToObject(fieldClass, reader, useAnnotation);
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * 读取一个基本类型的值并转换为clz类型，无法转换时返回默认值
+     */
+    private static Object readValue(Class<?> clz, JsonReader reader) throws IOException {
+        String text;
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            text = String.valueOf(reader.nextBoolean());
+        } else {
+            text = reader.nextString();
+        }
+        if (clz == String.class) {
+            return text;
+        } else if (clz == Integer.class || clz == int.class) {
+            return parseInt(text, (int) parseDouble(text, 0.0d));
+        } else if (clz == Long.class || clz == long.class) {
+            return parseLong(text, (long) parseDouble(text, 0.0d));
+        } else if (clz == Double.class || clz == double.class) {
+            return parseDouble(text, 0.0d);
+        } else if (clz == Boolean.class || clz == boolean.class) {
+            return parseBoolean(text, false);
+        } else if (clz == Float.class || clz == float.class) {
+            return parseFloat(text, 0.0f);
+        } else {
+            return null;
+        }
+    }
+
     private static <T> Object getField(T t, Class<?> fieldClass, String key, JSONObject jsonObject, boolean useAnnotation) throws JSONParserException {
         Object value = null;
         try {
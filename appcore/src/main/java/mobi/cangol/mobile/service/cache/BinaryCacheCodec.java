@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 紧凑的二进制编解码器
+ * 支持null、String(含JSON文本)、byte[]、基本类型包装类以及由它们组成的ArrayList(可嵌套)，
+ * 每个值只写一个字节的类型标记和原始数据，不含类描述信息
+ *
+ * @author Cangol
+ */
+class BinaryCacheCodec implements CacheCodec {
+    static final int ID = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_DEPTH = 8;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BYTES = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_FLOAT = 6;
+    private static final byte TYPE_BOOLEAN = 7;
+    private static final byte TYPE_SHORT = 8;
+    private static final byte TYPE_BYTE = 9;
+    private static final byte TYPE_CHAR = 10;
+    private static final byte TYPE_LIST = 11;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Serializable object) {
+        return canEncode(object, 0);
+    }
+
+    private boolean canEncode(Object object, int depth) {
+        if (typeOf(object) != TYPE_LIST) {
+            return typeOf(object) != -1;
+        }
+        if (depth >= MAX_DEPTH) {
+            return false;
+        }
+        for (Object item : (List<?>) object) {
+            if (!canEncode(item, depth + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte typeOf(Object object) {
+        if (object == null) {
+            return TYPE_NULL;
+        }
+        Class<?> clazz = object.getClass();
+        if (clazz == String.class) {
+            return TYPE_STRING;
+        } else if (clazz == byte[].class) {
+            return TYPE_BYTES;
+        } else if (clazz == Integer.class) {
+            return TYPE_INT;
+        } else if (clazz == Long.class) {
+            return TYPE_LONG;
+        } else if (clazz == Double.class) {
+            return TYPE_DOUBLE;
+        } else if (clazz == Float.class) {
+            return TYPE_FLOAT;
+        } else if (clazz == Boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (clazz == Short.class) {
+            return TYPE_SHORT;
+        } else if (clazz == Byte.class) {
+            return TYPE_BYTE;
+        } else if (clazz == Character.class) {
+            return TYPE_CHAR;
+        } else if (clazz == ArrayList.class) {
+            //只接受ArrayList，保证解码后类型不变
+            return TYPE_LIST;
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public void encode(Serializable object, DataOutputStream out) throws IOException {
+        write(object, out);
+    }
+
+    private void write(Object object, DataOutputStream out) throws IOException {
+        byte type = typeOf(object);
+        out.writeByte(type);
+        switch (type) {
+            case TYPE_NULL:
+                break;
+            case TYPE_STRING:
+                byte[] bytes = ((String) object).getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            case TYPE_BYTES:
+                out.writeInt(((byte[]) object).length);
+                out.write((byte[]) object);
+                break;
+            case TYPE_INT:
+                out.writeInt((Integer) object);
+                break;
+            case TYPE_LONG:
+                out.writeLong((Long) object);
+                break;
+            case TYPE_DOUBLE:
+                out.writeDouble((Double) object);
+                break;
+            case TYPE_FLOAT:
+                out.writeFloat((Float) object);
+                break;
+            case TYPE_BOOLEAN:
+                out.writeBoolean((Boolean) object);
+                break;
+            case TYPE_SHORT:
+                out.writeShort((Short) object);
+                break;
+            case TYPE_BYTE:
+                out.writeByte((Byte) object);
+                break;
+            case TYPE_CHAR:
+                out.writeChar((Character) object);
+                break;
+            case TYPE_LIST:
+                List<?> list = (List<?>) object;
+                out.writeInt(list.size());
+                for (Object item : list) {
+                    write(item, out);
+                }
+                break;
+            default:
+                throw new IOException("unsupported type " + object.getClass().getName());
+        }
+    }
+
+    @Override
+    public Serializable decode(DataInputStream in) throws IOException {
+        return (Serializable) read(in);
+    }
+
+    private Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return new String(readBytes(in), UTF_8);
+            case TYPE_BYTES:
+                return readBytes(in);
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_CHAR:
+                return in.readChar();
+            case TYPE_LIST:
+                int size = in.readInt();
+                if (size < 0) {
+                    throw new IOException("bad list size " + size);
+                }
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            default:
+                throw new IOException("unknown type " + type);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * 磁盘缓存对象的编解码器
+ * 编码器标示写入缓存头部，读取时按标示选择解码器；0-15为内置编码器保留
+ *
+ * @author Cangol
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码器标示，取值范围16-255
+     *
+     * @return
+     */
+    int getId();
+
+    /**
+     * 是否可以编码该对象
+     *
+     * @param object 缓存对象，可能为null
+     * @return
+     */
+    boolean canEncode(Serializable object);
+
+    /**
+     * 编码
+     *
+     * @param object
+     * @param out
+     * @throws IOException
+     */
+    void encode(Serializable object, DataOutputStream out) throws IOException;
+
+    /**
+     * 解码
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    Serializable decode(DataInputStream in) throws IOException;
+}
@@ -1,6 +1,7 @@
 package mobi.cangol.mobile.service.cache;
 
 import java.io.Serializable;
+import java.util.List;
 
 import mobi.cangol.mobile.service.AppService;
 
@@ -13,6 +14,18 @@ public interface CacheManager extends AppService {
      * 缓存最大大小
      */
     String CACHE_SIZE = "cache_size";
+    /**
+     * 内存缓存最大大小
+     */
+    String CACHE_MEM_SIZE = "cache_mem_size";
+    /**
+     * 过期缓存清理间隔(单位毫秒)
+     */
+    String CACHE_SWEEP_INTERVAL = "cache_sweep_interval";
+    /**
+     * 磁盘缓存分片数
+     */
+    String CACHE_SHARD_COUNT = "cache_shard_count";
 
     /**
      * 获取缓存对象
@@ -32,6 +45,15 @@ public interface CacheManager extends AppService {
      */
     void getContent(final String context, final String id, final CacheLoader cacheLoader);
 
+    /**
+     * 批量获取缓存对象，同一id正在进行的加载会被合并
+     *
+     * @param context     上下文标示，可当做分类
+     * @param ids         缓存标示
+     * @param cacheLoader returnContent返回HashMap&lt;String, Serializable&gt;，不含未命中的id
+     */
+    void getContentAll(final String context, final List<String> ids, final CacheLoader cacheLoader);
+
     /**
      * 判断是否存在缓存对象
      *
@@ -59,6 +81,25 @@ public interface CacheManager extends AppService {
      * @param period  有效期(单位毫秒)
      */
     void addContent(String context, String id, Serializable data,long period);
+
+    /**
+     * 添加缓存对象
+     *
+     * @param context    上下文标示，可当做分类
+     * @param id         缓存标示
+     * @param data       必须实现Serializable
+     * @param period     有效期(单位毫秒)，-1为永久
+     * @param softPeriod 新鲜期(单位毫秒)，超过后仍返回旧数据并通过CacheRefresher在后台刷新，小于等于0为不刷新
+     */
+    void addContent(String context, String id, Serializable data, long period, long softPeriod);
+
+    /**
+     * 设置context的缓存刷新器，缓存超过新鲜期或即将过期时在后台刷新
+     *
+     * @param context        上下文标示
+     * @param cacheRefresher 为null时移除
+     */
+    void setCacheRefresher(String context, CacheRefresher cacheRefresher);
     /**
      * 移除缓存对象
      *
@@ -96,4 +137,33 @@ public interface CacheManager extends AppService {
      */
     void clearCache();
 
+    /**
+     * 设置内存缓存对象大小的估算器
+     *
+     * @param cacheSizer
+     */
+    void setCacheSizer(CacheSizer cacheSizer);
+
+    /**
+     * 添加磁盘缓存对象的编解码器，后添加的优先，都不支持时使用Java序列化
+     *
+     * @param cacheCodec
+     */
+    void addCacheCodec(CacheCodec cacheCodec);
+
+    /**
+     * 获取缓存统计的快照
+     *
+     * @return
+     */
+    CacheStats getStats();
+
+    /**
+     * 设置缓存统计的监听，在后台线程按间隔回调，listener为null时取消
+     *
+     * @param listener
+     * @param interval 回调间隔(毫秒)
+     */
+    void setCacheStatsListener(CacheStatsListener listener, long interval);
+
 }
@@ -22,8 +22,10 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 import android.os.StatFs;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,13 +34,27 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import mobi.cangol.mobile.logging.Log;
 import mobi.cangol.mobile.service.Service;
 import mobi.cangol.mobile.service.ServiceProperty;
-import mobi.cangol.mobile.utils.Object2FileUtils;
 
 /**
  * @author Cangol
@@ -49,13 +65,50 @@ class CacheManagerImpl implements CacheManager {
     private static final String TAG = "CacheManager";
     private static final int DISK_CACHE_INDEX = 0;
     private static final long DEFAULT_DISK_CACHE_SIZE = 1024 * 1024 * 20; // 20MB
-    private final Object mDiskCacheLock = new Object();
+    private static final int DEFAULT_MEM_CACHE_DIVIDER = 16; // 1/16 of max heap
+    private static final int DEFAULT_DISK_CACHE_SHARD_COUNT = 4;
+    private static final long DEFAULT_SWEEP_INTERVAL = 10 * 60 * 1000L; // 10min
+    private static final int DISK_LOCK_STRIPES = 32;
+    private static final char KEY_SEPARATOR = '\u0001';
+    private static final int MAX_WRITE_BATCH = 256;
+    private static final long JOURNAL_FLUSH_INTERVAL = 1000L;
+    private static final int JOURNAL_FLUSH_OPS = 128;
+    /**
+     * 磁盘缓存的生命周期锁，读写对象时共享持有，初始化、清除和关闭时独占持有
+     */
+    private final ReentrantReadWriteLock mDiskCacheLock = new ReentrantReadWriteLock();
+    /**
+     * 按key分段的读写锁，同一key的读写互斥，不同key互不阻塞
+     */
+    private final ReentrantReadWriteLock[] mDiskKeyLocks = newLocks(DISK_LOCK_STRIPES);
+    private final Object mDiskCacheStartLock = new Object();
     private boolean mDebug;
-    private DiskLruCache mDiskLruCache;
-    private HashMap<String, HashMap<String, CacheObject>> mContextMaps = new HashMap<>();
-    private boolean mDiskCacheStarting = true;
+    private volatile ShardedDiskLruCache mDiskLruCache;
+    private MemoryCache mMemoryCache;
+    private final ConcurrentHashMap<String, InFlightLoad> mInFlightLoads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CacheRefresher> mRefreshers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> mRefreshing = new ConcurrentHashMap<>();
+    private CacheSizer mCacheSizer = new DefaultCacheSizer();
+    private final CacheObjectSerializer mSerializer = new CacheObjectSerializer();
+    /**
+     * 磁盘缓存key到过期时间的索引，避免判断过期时读取数据
+     */
+    private final ConcurrentHashMap<String, Long> mExpiryIndex = new ConcurrentHashMap<>();
+    private ScheduledExecutorService mSweeper;
+    private final CacheStatsRecorder mStatsRecorder = new CacheStatsRecorder();
+    private ScheduledFuture<?> mStatsFuture;
+    private final ConcurrentLinkedQueue<CacheObject> mPendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mWriteScheduled = new AtomicBoolean();
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainPendingWrites();
+        }
+    };
+    private volatile boolean mDiskCacheStarting = true;
     private File mDiskCacheDir;
     private long mDiskCacheSize;
+    private int mDiskCacheShardCount = DEFAULT_DISK_CACHE_SHARD_COUNT;
     private ServiceProperty mServiceProperty;
     private Application mContext;
 
@@ -69,9 +122,47 @@ class CacheManagerImpl implements CacheManager {
         this.mServiceProperty = serviceProperty;
         String dir = mServiceProperty.getString(CacheManager.CACHE_DIR);
         long size = mServiceProperty.getLong(CacheManager.CACHE_SIZE);
+        int shardCount = mServiceProperty.getInt(CacheManager.CACHE_SHARD_COUNT);
+        mDiskCacheShardCount = shardCount > 0 ? shardCount : DEFAULT_DISK_CACHE_SHARD_COUNT;
         setDiskCache(
                 !TextUtils.isEmpty(dir) ? getDiskCacheDir(mContext, dir) : getDiskCacheDir(mContext, "ContentCache"),
                 size > 0 ? size : DEFAULT_DISK_CACHE_SIZE);
+        long memSize = mServiceProperty.getLong(CacheManager.CACHE_MEM_SIZE);
+        setMemoryCache(memSize > 0 ? memSize : Runtime.getRuntime().maxMemory() / DEFAULT_MEM_CACHE_DIVIDER);
+        long sweepInterval = mServiceProperty.getLong(CacheManager.CACHE_SWEEP_INTERVAL);
+        startSweeper(sweepInterval > 0 ? sweepInterval : DEFAULT_SWEEP_INTERVAL);
+    }
+
+    /**
+     * 设置内存缓存大小，并初始化；被淘汰的未过期对象写入磁盘缓存
+     *
+     * @param memCacheSize
+     */
+    private void setMemoryCache(long memCacheSize) {
+        Log.i(TAG, "mMemCacheSize:" + memCacheSize);
+        mMemoryCache = new MemoryCache(memCacheSize, mCacheSizer);
+        mMemoryCache.setOnEvictedListener(new MemoryCache.OnEvictedListener() {
+            @Override
+            public void onEvicted(CacheObject object) {
+                mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_SIZE, 1);
+                if (!object.isExpired()) {
+                    asyncAddContentToDiskCache(object.getId(), object);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void addCacheCodec(CacheCodec cacheCodec) {
+        mSerializer.addCodec(cacheCodec);
+    }
+
+    @Override
+    public void setCacheSizer(CacheSizer cacheSizer) {
+        this.mCacheSizer = cacheSizer != null ? cacheSizer : new DefaultCacheSizer();
+        if (mMemoryCache != null) {
+            mMemoryCache.setCacheSizer(mCacheSizer);
+        }
     }
 
     /**
@@ -96,7 +187,8 @@ class CacheManagerImpl implements CacheManager {
      */
     private void initDiskCache(File diskCacheDir, long diskCacheSize) {
         // Set up disk cache
-        synchronized (mDiskCacheLock) {
+        mDiskCacheLock.writeLock().lock();
+        try {
             if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
                 if (diskCacheDir != null) {
                     if (!diskCacheDir.exists()) {
@@ -104,7 +196,8 @@ class CacheManagerImpl implements CacheManager {
                     }
                     if (getUsableSpace(diskCacheDir) > diskCacheSize) {
                         try {
-                            mDiskLruCache = DiskLruCache.open(diskCacheDir, 1, 1, diskCacheSize);
+                            mDiskLruCache = ShardedDiskLruCache.open(diskCacheDir, 1, 1, diskCacheSize, mDiskCacheShardCount);
+                            mDiskLruCache.setJournalFlushPolicy(JOURNAL_FLUSH_INTERVAL, JOURNAL_FLUSH_OPS);
                             if (mDebug) {
                                 Log.d(TAG, "Disk cache initialized");
                             }
@@ -116,100 +209,216 @@ class CacheManagerImpl implements CacheManager {
                     //
                 }
             }
+        } finally {
+            mDiskCacheLock.writeLock().unlock();
+        }
+        synchronized (mDiskCacheStartLock) {
             mDiskCacheStarting = false;
-            mDiskCacheLock.notifyAll();
+            mDiskCacheStartLock.notifyAll();
+        }
+    }
+
+    /**
+     * 等待磁盘缓存初始化完成
+     */
+    private void waitForDiskCache() {
+        synchronized (mDiskCacheStartLock) {
+            while (mDiskCacheStarting) {
+                try {
+                    mDiskCacheStartLock.wait();
+                } catch (InterruptedException e) {
+                    Log.d(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static ReentrantReadWriteLock[] newLocks(int count) {
+        ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
+
+    private ReentrantReadWriteLock getDiskKeyLock(String key) {
+        return mDiskKeyLocks[getDiskKeyStripe(key)];
+    }
+
+    private int getDiskKeyStripe(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % DISK_LOCK_STRIPES;
+    }
+
+    /**
+     * 多个key对应的锁，按固定顺序排列，依次加锁以避免死锁
+     *
+     * @param keys
+     * @return
+     */
+    private List<ReentrantReadWriteLock> getDiskKeyLocks(Collection<String> keys) {
+        boolean[] stripes = new boolean[DISK_LOCK_STRIPES];
+        for (String key : keys) {
+            stripes[getDiskKeyStripe(key)] = true;
+        }
+        List<ReentrantReadWriteLock> locks = new ArrayList<>();
+        for (int i = 0; i < DISK_LOCK_STRIPES; i++) {
+            if (stripes[i]) {
+                locks.add(mDiskKeyLocks[i]);
+            }
         }
+        return locks;
     }
 
     @Override
     public Serializable getContent(String context, String id) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap) {
-            contextMap = new HashMap<>();
-            mContextMaps.put(context, contextMap);
-        }
-        CacheObject obj = contextMap.get(id);
+        CacheObject obj = getContentFromMem(context, id);
         if (obj == null) {
-            obj = getContentFromDiskCache(id);
+            obj = loadContentFromDiskCache(context, id);
             if (obj != null) {
-                contextMap.put(id, obj);
+                mMemoryCache.put(context, id, obj);
+            } else {
+                pruneIndex(context, id);
             }
         }
         if(obj!=null&&obj.isExpired()){
             Log.e(TAG, "is expired & remove ");
-            removeContent(context,id);
+            removeExpiredContent(context,id);
             obj=null;
         }
+        if (obj != null) {
+            refreshIfNeeded(context, id, obj);
+        }
 
         return obj==null?null:obj.getObject();
     }
 
     @Override
     public void getContent(final String context, final String id, final CacheLoader cacheLoader) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap) {
-            contextMap = new HashMap<>();
-            mContextMaps.put(context, contextMap);
-        }
-        CacheObject obj = contextMap.get(id);
+        CacheObject obj = getContentFromMem(context, id);
         if (obj == null) {
-            new AsyncTask<String, Void, CacheObject>() {
-                @Override
-                protected void onPreExecute() {
-                    super.onPreExecute();
-                    if (cacheLoader != null) {
-                        cacheLoader.loading();
+            if (cacheLoader != null) {
+                cacheLoader.loading();
+            }
+            final String key = context + KEY_SEPARATOR + id;
+            while (true) {
+                final InFlightLoad load = new InFlightLoad();
+                final InFlightLoad existing = mInFlightLoads.putIfAbsent(key, load);
+                if (existing == null) {
+                    load.addLoader(cacheLoader);
+                    startLoad(context, id, key, load);
+                    return;
+                } else if (existing.addLoader(cacheLoader)) {
+                    //合并到正在进行的加载
+                    return;
+                }
+                //已完成的加载尚未移除，重试
+                mInFlightLoads.remove(key, existing);
+            }
+        } else  {
+            if(obj.isExpired()){
+                Log.e(TAG, "is expired & remove ");
+                removeExpiredContent(context,id);
+                obj=null;
+            } else {
+                refreshIfNeeded(context, id, obj);
+            }
+            if (cacheLoader != null){
+                cacheLoader.returnContent(obj==null?null:obj.getObject());
+            }
+        }
+    }
+
+    /**
+     * 开始从磁盘加载，完成后回调所有合并的CacheLoader
+     *
+     * @param context
+     * @param id
+     * @param key
+     * @param load
+     */
+    private void startLoad(final String context, final String id, final String key, final InFlightLoad load) {
+        new AsyncTask<Void, Void, List<CacheLoader>>() {
+            private Serializable mResult;
+
+            @Override
+            protected List<CacheLoader> doInBackground(Void... params) {
+                CacheObject result = null;
+                try {
+                    result = loadContentFromDiskCache(context, id);
+                    if (result != null && result.isExpired()) {
+                        Log.e(TAG, "is expired & remove ");
+                        removeExpiredContent(context, id);
+                        result = null;
+                    }
+                    if (result != null) {
+                        mMemoryCache.put(context, id, result);
+                        mResult = result.getObject();
+                        refreshIfNeeded(context, id, result);
+                    } else {
+                        pruneIndex(context, id);
                     }
+                } finally {
+                    mInFlightLoads.remove(key, load);
                 }
+                return load.complete();
+            }
 
+            @Override
+            protected void onPostExecute(List<CacheLoader> loaders) {
+                super.onPostExecute(loaders);
+                for (CacheLoader loader : loaders) {
+                    loader.returnContent(mResult);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @Override
+    public void getContentAll(String context, List<String> ids, final CacheLoader cacheLoader) {
+        if (cacheLoader != null) {
+            cacheLoader.loading();
+        }
+        final HashMap<String, Serializable> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            if (cacheLoader != null) {
+                cacheLoader.returnContent(result);
+            }
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(ids.size());
+        for (final String id : ids) {
+            getContent(context, id, new CacheLoader() {
                 @Override
-                protected CacheObject doInBackground(String... params) {
-                    return getContentFromDiskCache(params[0]);
+                public void loading() {
+                    //do nothing
                 }
 
                 @Override
-                protected void onPostExecute(CacheObject result) {
-                    super.onPostExecute(result);
-                    if (result != null) {
-                        addContentToMem(context, id, result);
+                public void returnContent(Object content) {
+                    synchronized (result) {
+                        if (content != null) {
+                            result.put(id, (Serializable) content);
+                        }
                     }
-                    if(result!=null&&result.isExpired()){
-                        Log.e(TAG, "is expired & remove ");
-                        removeContent(context,id);
-                        result=null;
+                    if (remaining.decrementAndGet() == 0 && cacheLoader != null) {
+                        cacheLoader.returnContent(result);
                     }
-                    if (cacheLoader != null)
-                        cacheLoader.returnContent(result==null?null:result.getObject());
-
                 }
-            }.execute(id);
-
-        } else  {
-            if(obj!=null&&obj.isExpired()){
-                Log.e(TAG, "is expired & remove ");
-                removeContent(context,id);
-                obj=null;
-            }
-            if (cacheLoader != null){
-                cacheLoader.returnContent(obj==null?null:obj.getObject());
-            }
+            });
         }
     }
 
     @Override
     public boolean hasContent(String context, String id) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap) {
-            contextMap = new HashMap<>();
-            mContextMaps.put(context, contextMap);
-        }
-        CacheObject obj = contextMap.get(id);
+        CacheObject obj = mMemoryCache.get(context, id);
         if (obj == null) {
-            return hasContentFromDiskCache(id);
+            return hasContentFromDiskCache(context, id);
         } else {
             if(obj.isExpired()){
                 Log.e(TAG, "is expired & remove ");
-                removeContent(context,id);
+                removeExpiredContent(context,id);
                 return false;
             }else{
                 return true;
@@ -218,52 +427,85 @@ class CacheManagerImpl implements CacheManager {
     }
 
     /**
-     * 判断磁盘缓存是否含有
+     * 判断磁盘缓存是否含有，只检查过期索引或读取头部
      *
+     * @param context
      * @param id
      * @return
      */
-    private boolean hasContentFromDiskCache(String id) {
+    private boolean hasContentFromDiskCache(String context, String id) {
         final String key = hashKeyForDisk(id);
-        synchronized (mDiskCacheLock) {
-            while (mDiskCacheStarting) {
-                try {
-                    mDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                    Log.d(e.getMessage());
-                }
-            }
-            if (mDiskLruCache != null) {
-                InputStream inputStream = null;
-                try {
-                    final DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key);
-                    if (snapshot != null) {
-                        inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            CacheObject obj=(CacheObject) Object2FileUtils.readObject(inputStream);
-                            if(obj.isExpired()){
-                                Log.e(TAG, "is expired & remove ");
-                                 mDiskLruCache.remove(hashKeyForDisk(id));
-                                return false;
-                            }else{
-                                return true;
-                            }
-                        }
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getContentFromDiskCache - " + e);
-                } finally {
-                    try {
-                        if (inputStream != null) {
-                            inputStream.close();
-                        }
-                    } catch (IOException e) {
-                        Log.d(e.getMessage());
-                    }
-                }
+        Long expireTime = getExpireTimeFromDiskCache(key);
+        if (expireTime == null) {
+            pruneIndex(context, id);
+            return false;
+        }
+        if (expireTime <= System.currentTimeMillis()) {
+            Log.e(TAG, "is expired & remove ");
+            if (removeFromDiskCache(key)) {
+                mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPIRY, 1);
             }
+            pruneIndex(context, id);
             return false;
         }
+        return true;
+    }
+
+    /**
+     * 获取磁盘缓存的过期时间，优先使用过期索引，否则只读取头部
+     *
+     * @param key
+     * @return 不存在时返回null
+     */
+    private Long getExpireTimeFromDiskCache(String key) {
+        waitForDiskCache();
+        mDiskCacheLock.readLock().lock();
+        try {
+            final ShardedDiskLruCache diskLruCache = mDiskLruCache;
+            if (diskLruCache == null || !diskLruCache.contains(key)) {
+                mExpiryIndex.remove(key);
+                return null;
+            }
+            Long expireTime = mExpiryIndex.get(key);
+            if (expireTime == null) {
+                CacheObject header = readFromDiskCache(diskLruCache, key, true);
+                expireTime = header == null ? null : getExpireTime(header);
+            }
+            return expireTime;
+        } finally {
+            mDiskCacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从内存缓存获取，并记录命中
+     *
+     * @param context
+     * @param id
+     * @return
+     */
+    private CacheObject getContentFromMem(String context, String id) {
+        CacheObject obj = mMemoryCache.get(context, id);
+        if (obj == null) {
+            mStatsRecorder.recordMemoryMiss();
+        } else {
+            mStatsRecorder.recordMemoryHit(context);
+        }
+        return obj;
+    }
+
+    /**
+     * 从磁盘缓存获取，并记录命中和耗时
+     *
+     * @param context
+     * @param id
+     * @return
+     */
+    private CacheObject loadContentFromDiskCache(String context, String id) {
+        long start = SystemClock.elapsedRealtime();
+        CacheObject obj = getContentFromDiskCache(id);
+        mStatsRecorder.recordDiskLoad(context, obj != null && !obj.isExpired(), SystemClock.elapsedRealtime() - start);
+        return obj;
     }
 
     /**
@@ -274,39 +516,219 @@ class CacheManagerImpl implements CacheManager {
      */
     private CacheObject getContentFromDiskCache(String id) {
         final String key = hashKeyForDisk(id);
-        synchronized (mDiskCacheLock) {
-            while (mDiskCacheStarting) {
+        waitForDiskCache();
+        mDiskCacheLock.readLock().lock();
+        try {
+            final ShardedDiskLruCache diskLruCache = mDiskLruCache;
+            return diskLruCache == null ? null : readFromDiskCache(diskLruCache, key, false);
+        } finally {
+            mDiskCacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 读取磁盘缓存，需持有mDiskCacheLock
+     * 只读取头部时使用peek，不记录日志也不提升LRU顺序，不算作一次访问
+     *
+     * @param diskLruCache
+     * @param key
+     * @param headerOnly   是否只读取头部
+     * @return
+     */
+    private CacheObject readFromDiskCache(ShardedDiskLruCache diskLruCache, String key, boolean headerOnly) {
+        if (headerOnly) {
+            return readHeaderFromDiskCache(diskLruCache, key);
+        }
+        final ReentrantReadWriteLock keyLock = getDiskKeyLock(key);
+        keyLock.readLock().lock();
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = diskLruCache.get(key);
+            if (snapshot != null) {
+                //完整读取时一次读入整个文件，避免小缓冲区反复拷贝
+                byte[] bytes = snapshot.getBytes(DISK_CACHE_INDEX);
+                mStatsRecorder.recordDiskRead(bytes.length);
+                CacheObject obj = mSerializer.read(new ByteArrayInputStream(bytes));
+                mExpiryIndex.put(key, getExpireTime(obj));
+                return obj;
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "getContentFromDiskCache - " + e);
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+            keyLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * 只读取磁盘缓存的头部，需持有mDiskCacheLock
+     *
+     * @param diskLruCache
+     * @param key
+     * @return
+     */
+    private CacheObject readHeaderFromDiskCache(ShardedDiskLruCache diskLruCache, String key) {
+        final ReentrantReadWriteLock keyLock = getDiskKeyLock(key);
+        keyLock.readLock().lock();
+        InputStream in = null;
+        try {
+            in = diskLruCache.peek(key, DISK_CACHE_INDEX);
+            if (in != null) {
+                CacheObject obj = mSerializer.readHeader(in);
+                mExpiryIndex.put(key, getExpireTime(obj));
+                return obj;
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "readHeaderFromDiskCache - " + e);
+        } finally {
+            if (in != null) {
                 try {
-                    mDiskCacheLock.wait();
-                } catch (InterruptedException e) {
+                    in.close();
+                } catch (IOException e) {
                     Log.d(e.getMessage());
                 }
             }
+            keyLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * 从磁盘缓存移除
+     *
+     * @param id
+     */
+    private boolean removeContentFromDiskCache(String id) {
+        return removeFromDiskCache(hashKeyForDisk(id));
+    }
+
+    private boolean removeFromDiskCache(String key) {
+        mDiskCacheLock.readLock().lock();
+        final ReentrantReadWriteLock keyLock = getDiskKeyLock(key);
+        keyLock.writeLock().lock();
+        try {
+            mExpiryIndex.remove(key);
             if (mDiskLruCache != null) {
-                InputStream inputStream = null;
-                try {
-                    final DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key);
-                    if (snapshot != null) {
-                        inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                        if (inputStream != null) {
-                            return (CacheObject) Object2FileUtils.readObject(inputStream);
-                        }
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "getContentFromDiskCache - " + e);
-                } finally {
-                    try {
-                        if (inputStream != null) {
-                            inputStream.close();
-                        }
-                    } catch (IOException e) {
-                        Log.d(e.getMessage());
-                    }
-                }
+                return mDiskLruCache.remove(key);
+            }
+        } catch (IOException e) {
+            if (mDebug) {
+                Log.d(TAG, "cache remove" + key, e);
+            }
+        } finally {
+            keyLock.writeLock().unlock();
+            mDiskCacheLock.readLock().unlock();
+        }
+        return false;
+    }
+
+    /**
+     * 磁盘上已不存在(过期移除或被DiskLruCache按容量淘汰)的对象，从context索引中移除；
+     * 与写入磁盘后的reindex使用同一个key锁，避免移除刚写入的对象的索引
+     *
+     * @param context
+     * @param id
+     */
+    private void pruneIndex(String context, String id) {
+        final String key = hashKeyForDisk(id);
+        mDiskCacheLock.readLock().lock();
+        final ReentrantReadWriteLock keyLock = getDiskKeyLock(key);
+        keyLock.writeLock().lock();
+        try {
+            final ShardedDiskLruCache diskLruCache = mDiskLruCache;
+            if (diskLruCache != null && !diskLruCache.contains(key)) {
+                mMemoryCache.unindex(context, id);
+            }
+        } finally {
+            keyLock.writeLock().unlock();
+            mDiskCacheLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 过期时间，永不过期时为Long.MAX_VALUE
+     *
+     * @param obj
+     * @return
+     */
+    private static long getExpireTime(CacheObject obj) {
+        return obj.getPeriod() == -1 ? Long.MAX_VALUE : obj.getTimestamp() + obj.getPeriod();
+    }
+
+    /**
+     * 清除内存和磁盘中所有已过期的缓存
+     *
+     * @return 从磁盘移除的个数
+     */
+    int sweepExpired() {
+        if (mMemoryCache != null) {
+            mMemoryCache.removeExpired();
+        }
+        List<String> keys;
+        waitForDiskCache();
+        mDiskCacheLock.readLock().lock();
+        try {
+            if (mDiskLruCache == null) {
+                return 0;
+            }
+            keys = mDiskLruCache.keys();
+        } finally {
+            mDiskCacheLock.readLock().unlock();
+        }
+        //清理已被DiskLruCache按容量淘汰的索引
+        mExpiryIndex.keySet().retainAll(new HashSet<>(keys));
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        for (String key : keys) {
+            Long expireTime = getExpireTimeFromDiskCache(key);
+            if (expireTime != null && expireTime <= now && removeFromDiskCache(key)) {
+                count++;
             }
-            return null;
         }
+        mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPIRY, count);
+        //清理磁盘上已不存在的对象的context索引
+        for (String context : mMemoryCache.contexts()) {
+            for (String id : mMemoryCache.keys(context)) {
+                pruneIndex(context, id);
+            }
+        }
+        if (mDebug) {
+            Log.d(TAG, "sweepExpired " + count + "/" + keys.size());
+        }
+        return count;
+    }
 
+    /**
+     * 启动定期清除过期缓存的后台线程
+     *
+     * @param interval
+     */
+    private void startSweeper(long interval) {
+        if (mSweeper != null) {
+            mSweeper.shutdownNow();
+        }
+        mSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG + "$Sweeper");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweepExpired();
+                } catch (Exception e) {
+                    Log.e(TAG, "sweepExpired - " + e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -317,12 +739,7 @@ class CacheManagerImpl implements CacheManager {
      * @param data
      */
     private void addContentToMem(String context, String id, Serializable data) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap) {
-            contextMap = new HashMap<>();
-        }
-        contextMap.put(id, new CacheObject(context,id,data));
-        mContextMaps.put(context, contextMap);
+        mMemoryCache.put(context, id, new CacheObject(context,id,data));
     }
 
     /**
@@ -333,20 +750,16 @@ class CacheManagerImpl implements CacheManager {
      * @param period
      */
     private void addContentToMem(String context, String id, Serializable data,long period) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap) {
-            contextMap = new HashMap<>();
-        }
-        contextMap.put(id, new CacheObject(context,id,data,period));
-        mContextMaps.put(context, contextMap);
+        mMemoryCache.put(context, id, new CacheObject(context,id,data,period));
     }
     /**
      * 添加到磁盘缓存（也添加到内存缓存）
+     * 超过内存单个对象上限(MemoryCache.maxEntrySize)的对象只写入磁盘
      */
     @Override
     public void addContent(String context, String id, Serializable data) {
         Log.i(TAG, "addContent:" + id + "," + data);
-        removeContent(context, id);
+        removeContentInternal(context, id);
         addContentToMem(context, id, data);
         // addContentToDiskCache(id,new CacheObject(context,id,data));
         asyncAddContentToDiskCache(id, new CacheObject(context,id,data));
@@ -355,81 +768,205 @@ class CacheManagerImpl implements CacheManager {
     @Override
     public void addContent(String context, String id, Serializable data, long period) {
         Log.i(TAG, "addContent:" + id + "," + data+","+period);
-        removeContent(context, id);
+        removeContentInternal(context, id);
         addContentToMem(context, id, data,period);
         // addContentToDiskCache(id,new CacheObject(context,id,data,period));
         asyncAddContentToDiskCache(id, new CacheObject(context,id,data,period));
     }
 
+    @Override
+    public void addContent(String context, String id, Serializable data, long period, long softPeriod) {
+        Log.i(TAG, "addContent:" + id + "," + data + "," + period + "," + softPeriod);
+        removeContentInternal(context, id);
+        CacheObject obj = new CacheObject(context, id, data, period, softPeriod);
+        mMemoryCache.put(context, id, obj);
+        asyncAddContentToDiskCache(id, obj);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long diskSize = 0;
+        long diskMaxSize = 0;
+        mDiskCacheLock.readLock().lock();
+        try {
+            if (mDiskLruCache != null) {
+                diskSize = mDiskLruCache.size();
+                diskMaxSize = mDiskLruCache.getMaxSize();
+            }
+        } finally {
+            mDiskCacheLock.readLock().unlock();
+        }
+        return mStatsRecorder.snapshot(mInFlightLoads.size(), mMemoryCache.size(), mMemoryCache.maxSize(), diskSize, diskMaxSize);
+    }
+
+    @Override
+    public synchronized void setCacheStatsListener(final CacheStatsListener listener, long interval) {
+        if (mStatsFuture != null) {
+            mStatsFuture.cancel(false);
+            mStatsFuture = null;
+        }
+        if (listener == null || mSweeper == null) {
+            return;
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be > 0");
+        }
+        mStatsFuture = mSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.onStats(getStats());
+                } catch (Exception e) {
+                    Log.e(TAG, "onStats - " + e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void setCacheRefresher(String context, CacheRefresher cacheRefresher) {
+        if (cacheRefresher == null) {
+            mRefreshers.remove(context);
+        } else {
+            mRefreshers.put(context, cacheRefresher);
+        }
+    }
+
     /**
-     * context暂停或退出时，持久化context关联的缓存（持久化到磁盘）
+     * 缓存超过新鲜期或即将过期时，在后台刷新；同一对象同时只有一个刷新
      *
      * @param context
+     * @param id
+     * @param obj
      */
-    private void moveContentToDiskCache(String context) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap || contextMap.isEmpty()) {
+    private void refreshIfNeeded(final String context, final String id, final CacheObject obj) {
+        final CacheRefresher refresher = mRefreshers.get(context);
+        if (refresher == null || !obj.isRefreshNeeded()) {
             return;
         }
-        Iterator<String> iterator = contextMap.keySet().iterator();
-        String id = null;
-        while (iterator.hasNext()) {
-            id = iterator.next();
-            // addContentToDiskCache(key,contextMap.get(key));
-            asyncAddContentToDiskCache(id, contextMap.get(id));
+        final String key = context + KEY_SEPARATOR + id;
+        if (mRefreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        if (mDebug) {
+            Log.d(TAG, "refresh " + key);
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresher.refresh(context, id, new CacheRefresher.Callback() {
+                        @Override
+                        public void onRefreshed(Serializable data) {
+                            mRefreshing.remove(key);
+                            addContent(context, id, data, obj.getPeriod(), obj.getSoftPeriod());
+                        }
+
+                        @Override
+                        public void onFailed(Throwable e) {
+                            mRefreshing.remove(key);
+                            Log.e(TAG, "refresh " + id + " - " + e);
+                        }
+                    });
+                } catch (Exception e) {
+                    mRefreshing.remove(key);
+                    Log.e(TAG, "refresh " + id + " - " + e);
+                }
+            }
+        });
+    }
+
+    /**
+     * context暂停或退出时，持久化context关联的缓存（持久化到磁盘）
+     *
+     * @param context
+     */
+    private void moveContentToDiskCache(String context) {
+        List<CacheObject> list = mMemoryCache.removeContext(context);
+        for (CacheObject obj : list) {
+            asyncAddContentToDiskCache(obj.getId(), obj);
         }
-        contextMap.clear();
-        mContextMaps.remove(context);
     }
 
     /**
-     * 异步添加到磁盘缓存
+     * 异步添加到磁盘缓存，短时间内的多次添加合并为一批写入
      *
      * @param id
      * @param data
      */
     private void asyncAddContentToDiskCache(final String id, final CacheObject data) {
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                addContentToDiskCache(id, data);
-                return null;
+        mPendingWrites.offer(data);
+        if (mWriteScheduled.compareAndSet(false, true)) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(mWriteRunnable);
+        }
+    }
+
+    /**
+     * 写入所有等待中的对象
+     */
+    private void drainPendingWrites() {
+        do {
+            writePendingWrites();
+            mWriteScheduled.set(false);
+        } while (!mPendingWrites.isEmpty() && mWriteScheduled.compareAndSet(false, true));
+    }
+
+    private void writePendingWrites() {
+        List<CacheObject> batch = new ArrayList<>();
+        CacheObject data;
+        while ((data = mPendingWrites.poll()) != null) {
+            batch.add(data);
+            if (batch.size() >= MAX_WRITE_BATCH) {
+                addContentToDiskCache(batch);
+                batch.clear();
             }
-        }.execute();
+        }
+        if (!batch.isEmpty()) {
+            addContentToDiskCache(batch);
+        }
     }
 
     /**
-     * 添加到磁盘缓存
+     * 批量添加到磁盘缓存，已存在的不覆盖；同一id多次添加时以最后一次为准
      *
-     * @param id
-     * @param data
+     * @param list
      */
-    private void addContentToDiskCache(String id, CacheObject data) {
-
-        synchronized (mDiskCacheLock) {
+    private void addContentToDiskCache(List<CacheObject> list) {
+        final LinkedHashMap<String, CacheObject> pending = new LinkedHashMap<>();
+        for (CacheObject data : list) {
+            pending.put(hashKeyForDisk(data.getId()), data);
+        }
+        mDiskCacheLock.readLock().lock();
+        final List<ReentrantReadWriteLock> keyLocks = getDiskKeyLocks(pending.keySet());
+        for (ReentrantReadWriteLock keyLock : keyLocks) {
+            keyLock.writeLock().lock();
+        }
+        try {
             // Add to disk cache
-            if (mDiskLruCache != null) {
-                final String key = hashKeyForDisk(id);
+            final ShardedDiskLruCache diskLruCache = mDiskLruCache;
+            if (diskLruCache == null) {
+                return;
+            }
+            final List<String> keys = new ArrayList<>(pending.size());
+            for (String key : pending.keySet()) {
+                if (!diskLruCache.contains(key)) {
+                    keys.add(key);
+                }
+            }
+            final Map<String, DiskLruCache.Editor> editors = diskLruCache.editAll(keys);
+            final List<DiskLruCache.Editor> written = new ArrayList<>(editors.size());
+            for (Map.Entry<String, DiskLruCache.Editor> entry : editors.entrySet()) {
+                final DiskLruCache.Editor editor = entry.getValue();
                 OutputStream out = null;
                 try {
-                    DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key);
-                    if (snapshot == null) {
-                        final DiskLruCache.Editor editor = mDiskLruCache.edit(key);
-                        if (editor != null) {
-                            out = editor.newOutputStream(DISK_CACHE_INDEX);
-                            // 写入out流
-                            Object2FileUtils.writeObject(data, out);
-                            editor.commit();
-                            out.close();
-                            flush();
-                        }
-                    } else {
-                        snapshot.getInputStream(DISK_CACHE_INDEX).close();
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "addContentToCache - " + e);
+                    out = editor.newOutputStream(DISK_CACHE_INDEX);
+                    // 写入out流
+                    mStatsRecorder.recordDiskWrite(mSerializer.write(pending.get(entry.getKey()), out));
+                    out.close();
+                    written.add(editor);
                 } catch (Exception e) {
                     Log.e(TAG, "addContentToCache - " + e);
+                    editor.abort();
                 } finally {
                     try {
                         if (out != null) {
@@ -440,75 +977,95 @@ class CacheManagerImpl implements CacheManager {
                     }
                 }
             }
+            diskLruCache.commitAll(written);
+            for (String key : editors.keySet()) {
+                if (diskLruCache.contains(key)) {
+                    mExpiryIndex.put(key, getExpireTime(pending.get(key)));
+                }
+            }
+            //已在磁盘上的对象恢复context索引(可能在等待写入期间被pruneIndex移除)
+            for (CacheObject data : pending.values()) {
+                if (data.getGroup() != null && diskLruCache.contains(hashKeyForDisk(data.getId()))) {
+                    mMemoryCache.reindex(data.getGroup(), data.getId());
+                }
+            }
+        } catch (final IOException e) {
+            Log.e(TAG, "addContentToCache - " + e);
+        } finally {
+            for (int i = keyLocks.size() - 1; i >= 0; i--) {
+                keyLocks.get(i).writeLock().unlock();
+            }
+            mDiskCacheLock.readLock().unlock();
         }
     }
 
     @Override
     public void removeContext(String context) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap || contextMap.isEmpty()) {
-            return;
-        }
-        Iterator<String> iterator = contextMap.keySet().iterator();
-        String id = null;
-        while (iterator.hasNext()) {
-            id = iterator.next();
-            String key = hashKeyForDisk(id);
-            try {
-                if (mDiskLruCache != null) {
-                    mDiskLruCache.remove(key);
-                }
-            } catch (IOException e) {
-                if (mDebug) {
-                    Log.d(TAG, "cache remove" + key, e);
-                }
-            }
+        List<String> ids = mMemoryCache.keys(context);
+        mMemoryCache.removeContext(context);
+        for (String id : ids) {
+            removeContentFromDiskCache(id);
         }
-        contextMap.clear();
-        mContextMaps.remove(context);
+        mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPLICIT, ids.size());
     }
 
     @Override
     public void removeContent(String context, String id) {
-        HashMap<String, CacheObject> contextMap = mContextMaps.get(context);
-        if (null == contextMap || contextMap.isEmpty()) {
-            return;
+        if (removeContentInternal(context, id)) {
+            mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPLICIT, 1);
         }
-        contextMap.remove(id);
-        String key = hashKeyForDisk(id);
-        try {
-            if (mDiskLruCache != null) {
-                mDiskLruCache.remove(key);
-            }
-        } catch (IOException e) {
-            if (mDebug) {
-                Log.d(TAG, "cache remove" + key, e);
-            }
+    }
+
+    /**
+     * 移除过期的缓存对象
+     *
+     * @param context
+     * @param id
+     */
+    private void removeExpiredContent(String context, String id) {
+        if (removeContentInternal(context, id)) {
+            mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPIRY, 1);
         }
     }
 
+    /**
+     * 从内存和磁盘移除缓存对象，不计入统计
+     *
+     * @param context
+     * @param id
+     * @return 是否有对象被移除
+     */
+    private boolean removeContentInternal(String context, String id) {
+        boolean removed = mMemoryCache.remove(context, id) != null;
+        return removeContentFromDiskCache(id) || removed;
+    }
+
     @Override
     public long size() {
         long size = 0;
-        synchronized (mDiskCacheLock) {
+        mDiskCacheLock.readLock().lock();
+        try {
             if (mDiskLruCache != null) {
                 size = mDiskLruCache.size();
             }
+        } finally {
+            mDiskCacheLock.readLock().unlock();
         }
         return size;
     }
 
     @Override
     public void clearCache() {
-        if (mContextMaps != null) {
-            mContextMaps.clear();
+        if (mMemoryCache != null) {
+            mStatsRecorder.recordEviction(CacheStatsRecorder.EVICTION_EXPLICIT, mMemoryCache.count());
+            mMemoryCache.clear();
             if (mDebug) {
                 Log.d(TAG, "Memory cache cleared");
             }
         }
 
-        synchronized (mDiskCacheLock) {
-            mDiskCacheStarting = true;
+        mDiskCacheLock.writeLock().lock();
+        try {
             if (mDiskLruCache != null && !mDiskLruCache.isClosed()) {
                 try {
                     mDiskLruCache.delete();
@@ -519,14 +1076,19 @@ class CacheManagerImpl implements CacheManager {
                     Log.e(TAG, "clearCache - " + e);
                 }
                 mDiskLruCache = null;
+                mExpiryIndex.clear();
                 initDiskCache(mDiskCacheDir, mDiskCacheSize);
             }
+        } finally {
+            mDiskCacheLock.writeLock().unlock();
         }
     }
 
     @Override
     public void flush() {
-        synchronized (mDiskCacheLock) {
+        writePendingWrites();
+        mDiskCacheLock.readLock().lock();
+        try {
             if (mDiskLruCache != null) {
                 try {
                     mDiskLruCache.flush();
@@ -537,12 +1099,15 @@ class CacheManagerImpl implements CacheManager {
                     Log.e(TAG, "flush - " + e);
                 }
             }
+        } finally {
+            mDiskCacheLock.readLock().unlock();
         }
     }
 
     @Override
     public void close() {
-        synchronized (mDiskCacheLock) {
+        mDiskCacheLock.writeLock().lock();
+        try {
             if (mDiskLruCache != null) {
                 try {
                     if (!mDiskLruCache.isClosed()) {
@@ -556,6 +1121,8 @@ class CacheManagerImpl implements CacheManager {
                     Log.e(TAG, "close - " + e);
                 }
             }
+        } finally {
+            mDiskCacheLock.writeLock().unlock();
         }
     }
 
@@ -641,6 +1208,14 @@ class CacheManagerImpl implements CacheManager {
 
     @Override
     public void onDestroy() {
+        if (mStatsFuture != null) {
+            mStatsFuture.cancel(false);
+            mStatsFuture = null;
+        }
+        if (mSweeper != null) {
+            mSweeper.shutdownNow();
+            mSweeper = null;
+        }
         this.close();
     }
 
@@ -659,7 +1234,43 @@ class CacheManagerImpl implements CacheManager {
         ServiceProperty sp = new ServiceProperty(TAG);
         sp.putString(CACHE_DIR, "contentCache");
         sp.putInt(CACHE_SIZE, 20971520);
+        sp.putLong(CACHE_MEM_SIZE, Runtime.getRuntime().maxMemory() / DEFAULT_MEM_CACHE_DIVIDER);
+        sp.putLong(CACHE_SWEEP_INTERVAL, DEFAULT_SWEEP_INTERVAL);
+        sp.putInt(CACHE_SHARD_COUNT, DEFAULT_DISK_CACHE_SHARD_COUNT);
         return sp;
     }
 
+    /**
+     * 正在进行的加载，同一key的并发请求共享一次磁盘读取
+     */
+    private static final class InFlightLoad {
+        private final List<CacheLoader> mLoaders = new ArrayList<>();
+        private boolean mCompleted;
+
+        /**
+         * 登记回调
+         *
+         * @param loader
+         * @return 加载已完成时返回false
+         */
+        synchronized boolean addLoader(CacheLoader loader) {
+            if (mCompleted) {
+                return false;
+            }
+            if (loader != null) {
+                mLoaders.add(loader);
+            }
+            return true;
+        }
+
+        /**
+         * 标记完成，之后不再接受新的回调
+         *
+         * @return 已登记的回调
+         */
+        synchronized List<CacheLoader> complete() {
+            mCompleted = true;
+            return new ArrayList<>(mLoaders);
+        }
+    }
 }
@@ -25,6 +25,11 @@ import mobi.cangol.mobile.logging.Log;
  * Created by xuewu.wei on 2016/3/14.
  */
 public class CacheObject implements Serializable {
+    private static final long serialVersionUID = 3589340266348109080L;
+    /**
+     * 距离过期的剩余时间少于有效期的该比例时提前刷新
+     */
+    private static final float REFRESH_AHEAD_RATIO = 0.2f;
     public static final int TIME_SEC =  1000;
     public static final int TIME_MIN = 60 * 1000;
     public static final int TIME_HOUR = 60 * 60 * 1000;
@@ -35,6 +40,10 @@ public class CacheObject implements Serializable {
     private String group;
     private long timestamp;
     private long period;
+    /**
+     * 新鲜期，小于等于0为不刷新；旧版本序列化的数据没有该字段，反序列化后为0
+     */
+    private long softPeriod;
     private Serializable object;
 
     public CacheObject() {
@@ -54,6 +63,18 @@ public class CacheObject implements Serializable {
         this.timestamp=System.currentTimeMillis();
     }
 
+    /**
+     * @param group
+     * @param id
+     * @param object
+     * @param period     有效期，-1为永久
+     * @param softPeriod 新鲜期，超过后仍可使用但需在后台刷新，小于等于0为不刷新
+     */
+    public CacheObject(String group, String id, Serializable object, long period, long softPeriod) {
+        this(group, id, object, period);
+        this.softPeriod = softPeriod;
+    }
+
     public String getId() {
         return id;
     }
@@ -86,6 +107,14 @@ public class CacheObject implements Serializable {
         this.period = period;
     }
 
+    public long getSoftPeriod() {
+        return softPeriod;
+    }
+
+    public void setSoftPeriod(long softPeriod) {
+        this.softPeriod = softPeriod;
+    }
+
     public Serializable getObject() {
         return object;
     }
@@ -94,6 +123,27 @@ public class CacheObject implements Serializable {
         this.object = object;
     }
 
+    /**
+     * 是否已超过新鲜期(仍可使用，需刷新)
+     *
+     * @return
+     */
+    public boolean isStale() {
+        return softPeriod > 0 && timestamp + softPeriod <= System.currentTimeMillis();
+    }
+
+    /**
+     * 是否需要刷新：已超过新鲜期，或即将过期
+     *
+     * @return
+     */
+    public boolean isRefreshNeeded() {
+        if (isStale()) {
+            return true;
+        }
+        return period != -1 && timestamp + period - System.currentTimeMillis() <= period * REFRESH_AHEAD_RATIO;
+    }
+
     public boolean isExpired(){
         if(period==-1){
             return false;
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 缓存对象的磁盘格式
+ * 头部依次为魔数、版本、编码器标示、时间戳、有效期、新鲜期(版本2起)、group和id，之后是编码器写入的数据；
+ * 不以魔数开头的数据视为旧版本直接序列化的CacheObject
+ *
+ * @author Cangol
+ */
+final class CacheObjectSerializer {
+    static final int MAGIC = 0x43434F42;
+    static final int VERSION = 2;
+    private static final int VERSION_1 = 1;
+    static final int RESERVED_CODEC_ID = 15;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int HEADER_BUFFER_SIZE = 512;
+
+    private final CopyOnWriteArrayList<CacheCodec> mCodecs = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Integer, CacheCodec> mCodecMap = new ConcurrentHashMap<>();
+    private final CacheCodec mDefaultCodec = new SerializableCacheCodec();
+
+    CacheObjectSerializer() {
+        register(new BinaryCacheCodec());
+        mCodecMap.put(mDefaultCodec.getId(), mDefaultCodec);
+    }
+
+    /**
+     * 添加编码器，后添加的优先
+     *
+     * @param codec
+     */
+    void addCodec(CacheCodec codec) {
+        if (codec.getId() <= RESERVED_CODEC_ID || codec.getId() > 255) {
+            throw new IllegalArgumentException("codec id must be in " + (RESERVED_CODEC_ID + 1) + "-255");
+        }
+        CacheCodec old = mCodecMap.get(codec.getId());
+        if (old != null && old != codec) {
+            throw new IllegalArgumentException("codec id " + codec.getId() + " already registered");
+        }
+        register(codec);
+    }
+
+    private void register(CacheCodec codec) {
+        mCodecMap.put(codec.getId(), codec);
+        mCodecs.add(0, codec);
+    }
+
+    private CacheCodec findCodec(CacheObject object) {
+        for (CacheCodec codec : mCodecs) {
+            if (codec.canEncode(object.getObject())) {
+                return codec;
+            }
+        }
+        return mDefaultCodec;
+    }
+
+    /**
+     * 写入缓存对象
+     *
+     * @param object
+     * @param out
+     * @return 写入的字节数
+     * @throws IOException
+     */
+    int write(CacheObject object, OutputStream out) throws IOException {
+        CacheCodec codec = findCodec(object);
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        dos.writeInt(MAGIC);
+        dos.writeByte(VERSION);
+        dos.writeByte(codec.getId());
+        dos.writeLong(object.getTimestamp());
+        dos.writeLong(object.getPeriod());
+        dos.writeLong(object.getSoftPeriod());
+        writeString(dos, object.getGroup());
+        writeString(dos, object.getId());
+        codec.encode(object.getObject(), dos);
+        dos.flush();
+        return dos.size();
+    }
+
+    /**
+     * 读取缓存对象
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    CacheObject read(InputStream in) throws IOException {
+        return read(in, false);
+    }
+
+    /**
+     * 只读取头部，返回的对象不含数据；旧版本数据没有头部，仍需完整读取
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    CacheObject readHeader(InputStream in) throws IOException {
+        return read(in, true);
+    }
+
+    private CacheObject read(InputStream in, boolean headerOnly) throws IOException {
+        //已在内存中的数据(如ByteArrayInputStream)无需再缓冲
+        InputStream bis = in.markSupported() ? in : new BufferedInputStream(in, headerOnly ? HEADER_BUFFER_SIZE : BUFFER_SIZE);
+        bis.mark(4);
+        DataInputStream dis = new DataInputStream(bis);
+        if (dis.readInt() != MAGIC) {
+            bis.reset();
+            return readLegacy(bis);
+        }
+        int version = dis.readUnsignedByte();
+        if (version != VERSION && version != VERSION_1) {
+            throw new IOException("unsupported version " + version);
+        }
+        int codecId = dis.readUnsignedByte();
+        CacheCodec codec = mCodecMap.get(codecId);
+        if (codec == null) {
+            throw new IOException("unknown codec " + codecId);
+        }
+        CacheObject object = new CacheObject();
+        object.setTimestamp(dis.readLong());
+        object.setPeriod(dis.readLong());
+        if (version >= VERSION) {
+            object.setSoftPeriod(dis.readLong());
+        }
+        object.setGroup(readString(dis));
+        object.setId(readString(dis));
+        if (!headerOnly) {
+            object.setObject(codec.decode(dis));
+        }
+        return object;
+    }
+
+    private CacheObject readLegacy(InputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        try {
+            return (CacheObject) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        } catch (ClassCastException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
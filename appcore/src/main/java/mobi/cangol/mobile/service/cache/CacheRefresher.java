@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.Serializable;
+
+/**
+ * 缓存刷新器
+ * 读取到超过新鲜期或即将过期的缓存时，先返回旧数据，再由刷新器在后台重新加载
+ *
+ * @author Cangol
+ */
+public interface CacheRefresher {
+
+    /**
+     * 重新加载数据，在后台线程调用，可同步加载也可异步加载(如AsyncHttpClient)，
+     * 完成后必须调用callback的其中一个方法
+     *
+     * @param context  上下文标示
+     * @param id       缓存标示
+     * @param callback
+     */
+    void refresh(String context, String id, Callback callback);
+
+    interface Callback {
+        /**
+         * 加载成功，以原有的有效期和新鲜期更新缓存
+         *
+         * @param data
+         */
+        void onRefreshed(Serializable data);
+
+        /**
+         * 加载失败，保留旧数据
+         *
+         * @param e
+         */
+        void onFailed(Throwable e);
+    }
+}
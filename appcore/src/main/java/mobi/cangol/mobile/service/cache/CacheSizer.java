@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.Serializable;
+
+/**
+ * 内存缓存对象大小的估算器
+ *
+ * @author Cangol
+ */
+public interface CacheSizer {
+
+    /**
+     * 估算缓存对象占用的内存大小
+     *
+     * @param context 上下文标示
+     * @param id      缓存标示
+     * @param object  缓存对象
+     * @return 字节数
+     */
+    long sizeOf(String context, String id, Serializable object);
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 缓存统计快照，不可变
+ * 计数从服务创建起累计
+ *
+ * @author Cangol
+ */
+public final class CacheStats {
+    /**
+     * 加载耗时直方图各桶的上限(毫秒)，最后一桶为超过最大上限的加载
+     */
+    public static final long[] LOAD_LATENCY_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final long memoryHitCount;
+    private final long memoryMissCount;
+    private final long diskHitCount;
+    private final long diskMissCount;
+    private final long sizeEvictionCount;
+    private final long expiryEvictionCount;
+    private final long explicitEvictionCount;
+    private final long diskBytesRead;
+    private final long diskBytesWritten;
+    private final long loadCount;
+    private final long totalLoadTime;
+    private final long[] loadLatencyHistogram;
+    private final int inFlightLoadCount;
+    private final long memorySize;
+    private final long memoryMaxSize;
+    private final long diskSize;
+    private final long diskMaxSize;
+    private final Map<String, ContextStats> contextStats;
+
+    CacheStats(long memoryHitCount, long memoryMissCount, long diskHitCount, long diskMissCount,
+               long sizeEvictionCount, long expiryEvictionCount, long explicitEvictionCount,
+               long diskBytesRead, long diskBytesWritten,
+               long loadCount, long totalLoadTime, long[] loadLatencyHistogram, int inFlightLoadCount,
+               long memorySize, long memoryMaxSize, long diskSize, long diskMaxSize,
+               Map<String, ContextStats> contextStats) {
+        this.memoryHitCount = memoryHitCount;
+        this.memoryMissCount = memoryMissCount;
+        this.diskHitCount = diskHitCount;
+        this.diskMissCount = diskMissCount;
+        this.sizeEvictionCount = sizeEvictionCount;
+        this.expiryEvictionCount = expiryEvictionCount;
+        this.explicitEvictionCount = explicitEvictionCount;
+        this.diskBytesRead = diskBytesRead;
+        this.diskBytesWritten = diskBytesWritten;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.loadLatencyHistogram = loadLatencyHistogram;
+        this.inFlightLoadCount = inFlightLoadCount;
+        this.memorySize = memorySize;
+        this.memoryMaxSize = memoryMaxSize;
+        this.diskSize = diskSize;
+        this.diskMaxSize = diskMaxSize;
+        this.contextStats = Collections.unmodifiableMap(contextStats);
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount;
+    }
+
+    public long getMemoryMissCount() {
+        return memoryMissCount;
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount;
+    }
+
+    public long getDiskMissCount() {
+        return diskMissCount;
+    }
+
+    /**
+     * 总命中率，任一层命中即算命中
+     *
+     * @return 0-1，无请求时为0
+     */
+    public double getHitRate() {
+        long hits = memoryHitCount + diskHitCount;
+        long requests = memoryHitCount + memoryMissCount;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * 内存容量不足淘汰(并写入磁盘)的个数
+     *
+     * @return
+     */
+    public long getSizeEvictionCount() {
+        return sizeEvictionCount;
+    }
+
+    /**
+     * 过期移除的个数
+     *
+     * @return
+     */
+    public long getExpiryEvictionCount() {
+        return expiryEvictionCount;
+    }
+
+    /**
+     * 调用removeContent/removeContext/clearCache移除的个数
+     *
+     * @return
+     */
+    public long getExplicitEvictionCount() {
+        return explicitEvictionCount;
+    }
+
+    public long getDiskBytesRead() {
+        return diskBytesRead;
+    }
+
+    public long getDiskBytesWritten() {
+        return diskBytesWritten;
+    }
+
+    /**
+     * 从磁盘加载的次数
+     *
+     * @return
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * 平均加载耗时(毫秒)
+     *
+     * @return
+     */
+    public double getAverageLoadTime() {
+        return loadCount == 0 ? 0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * 加载耗时直方图，与LOAD_LATENCY_BOUNDS对应，长度多一位
+     *
+     * @return
+     */
+    public long[] getLoadLatencyHistogram() {
+        return loadLatencyHistogram.clone();
+    }
+
+    /**
+     * 当前正在进行的异步加载数
+     *
+     * @return
+     */
+    public int getInFlightLoadCount() {
+        return inFlightLoadCount;
+    }
+
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public long getMemoryMaxSize() {
+        return memoryMaxSize;
+    }
+
+    public long getDiskSize() {
+        return diskSize;
+    }
+
+    public long getDiskMaxSize() {
+        return diskMaxSize;
+    }
+
+    /**
+     * 按context分类的命中统计
+     *
+     * @return
+     */
+    public Map<String, ContextStats> getContextStats() {
+        return contextStats;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "memoryHit=" + memoryHitCount +
+                ", memoryMiss=" + memoryMissCount +
+                ", diskHit=" + diskHitCount +
+                ", diskMiss=" + diskMissCount +
+                ", evictions(size/expiry/explicit)=" + sizeEvictionCount + "/" + expiryEvictionCount + "/" + explicitEvictionCount +
+                ", diskBytes(read/written)=" + diskBytesRead + "/" + diskBytesWritten +
+                ", avgLoadTime=" + getAverageLoadTime() +
+                ", inFlight=" + inFlightLoadCount +
+                ", memory=" + memorySize + "/" + memoryMaxSize +
+                ", disk=" + diskSize + "/" + diskMaxSize +
+                '}';
+    }
+
+    /**
+     * 单个context的命中统计
+     */
+    public static final class ContextStats {
+        private final long hitCount;
+        private final long missCount;
+
+        ContextStats(long hitCount, long missCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        @Override
+        public String toString() {
+            return "ContextStats{hit=" + hitCount + ", miss=" + missCount + '}';
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+/**
+ * 缓存统计的定期回调
+ *
+ * @author Cangol
+ */
+public interface CacheStatsListener {
+
+    /**
+     * 在后台线程回调
+     *
+     * @param stats 当前统计快照
+     */
+    void onStats(CacheStats stats);
+}
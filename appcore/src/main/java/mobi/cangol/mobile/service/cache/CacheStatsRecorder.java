@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 缓存统计的计数器，各计数独立原子更新
+ *
+ * @author Cangol
+ */
+final class CacheStatsRecorder {
+    static final int EVICTION_SIZE = 0;
+    static final int EVICTION_EXPIRY = 1;
+    static final int EVICTION_EXPLICIT = 2;
+
+    private final AtomicLong mMemoryHitCount = new AtomicLong();
+    private final AtomicLong mMemoryMissCount = new AtomicLong();
+    private final AtomicLong mDiskHitCount = new AtomicLong();
+    private final AtomicLong mDiskMissCount = new AtomicLong();
+    private final AtomicLongArray mEvictionCounts = new AtomicLongArray(3);
+    private final AtomicLong mDiskBytesRead = new AtomicLong();
+    private final AtomicLong mDiskBytesWritten = new AtomicLong();
+    private final AtomicLong mLoadCount = new AtomicLong();
+    private final AtomicLong mTotalLoadTime = new AtomicLong();
+    private final AtomicLongArray mLoadLatencyHistogram = new AtomicLongArray(CacheStats.LOAD_LATENCY_BOUNDS.length + 1);
+    private final ConcurrentHashMap<String, AtomicLongArray> mContextCounts = new ConcurrentHashMap<>();
+
+    void recordMemoryHit(String context) {
+        mMemoryHitCount.incrementAndGet();
+        contextCounts(context).incrementAndGet(0);
+    }
+
+    void recordMemoryMiss() {
+        mMemoryMissCount.incrementAndGet();
+    }
+
+    /**
+     * 记录一次磁盘加载
+     *
+     * @param context
+     * @param hit
+     * @param elapsed 耗时(毫秒)
+     */
+    void recordDiskLoad(String context, boolean hit, long elapsed) {
+        if (hit) {
+            mDiskHitCount.incrementAndGet();
+            contextCounts(context).incrementAndGet(0);
+        } else {
+            mDiskMissCount.incrementAndGet();
+            contextCounts(context).incrementAndGet(1);
+        }
+        mLoadCount.incrementAndGet();
+        mTotalLoadTime.addAndGet(elapsed);
+        int bucket = 0;
+        while (bucket < CacheStats.LOAD_LATENCY_BOUNDS.length && elapsed > CacheStats.LOAD_LATENCY_BOUNDS[bucket]) {
+            bucket++;
+        }
+        mLoadLatencyHistogram.incrementAndGet(bucket);
+    }
+
+    void recordEviction(int cause, int count) {
+        if (count > 0) {
+            mEvictionCounts.addAndGet(cause, count);
+        }
+    }
+
+    void recordDiskRead(long bytes) {
+        mDiskBytesRead.addAndGet(bytes);
+    }
+
+    void recordDiskWrite(long bytes) {
+        mDiskBytesWritten.addAndGet(bytes);
+    }
+
+    private AtomicLongArray contextCounts(String context) {
+        String key = context == null ? "" : context;
+        AtomicLongArray counts = mContextCounts.get(key);
+        if (counts == null) {
+            counts = new AtomicLongArray(2);
+            AtomicLongArray old = mContextCounts.putIfAbsent(key, counts);
+            if (old != null) {
+                counts = old;
+            }
+        }
+        return counts;
+    }
+
+    CacheStats snapshot(int inFlightLoadCount, long memorySize, long memoryMaxSize, long diskSize, long diskMaxSize) {
+        long[] histogram = new long[mLoadLatencyHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = mLoadLatencyHistogram.get(i);
+        }
+        Map<String, CacheStats.ContextStats> contextStats = new HashMap<>();
+        for (Map.Entry<String, AtomicLongArray> entry : mContextCounts.entrySet()) {
+            contextStats.put(entry.getKey(), new CacheStats.ContextStats(entry.getValue().get(0), entry.getValue().get(1)));
+        }
+        return new CacheStats(mMemoryHitCount.get(), mMemoryMissCount.get(), mDiskHitCount.get(), mDiskMissCount.get(),
+                mEvictionCounts.get(EVICTION_SIZE), mEvictionCounts.get(EVICTION_EXPIRY), mEvictionCounts.get(EVICTION_EXPLICIT),
+                mDiskBytesRead.get(), mDiskBytesWritten.get(),
+                mLoadCount.get(), mTotalLoadTime.get(), histogram, inFlightLoadCount,
+                memorySize, memoryMaxSize, diskSize, diskMaxSize, contextStats);
+    }
+}
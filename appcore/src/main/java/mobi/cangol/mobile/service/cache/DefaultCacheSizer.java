@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 默认的大小估算器
+ * 字符串、数组、基本类型包装类和它们的集合按内容估算，其他对象按固定大小估算，
+ * 缓存较大的自定义对象时应通过CacheManager.setCacheSizer提供更准确的实现
+ *
+ * @author Cangol
+ */
+class DefaultCacheSizer implements CacheSizer {
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int UNKNOWN_OBJECT_SIZE = 1024;
+    private static final int MAX_DEPTH = 3;
+
+    @Override
+    public long sizeOf(String context, String id, Serializable object) {
+        return sizeOf(object, 0);
+    }
+
+    private long sizeOf(Object object, int depth) {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof String) {
+            return OBJECT_OVERHEAD * 2 + 2L * ((String) object).length();
+        } else if (object instanceof byte[]) {
+            return OBJECT_OVERHEAD + ((byte[]) object).length;
+        } else if (object instanceof int[] || object instanceof float[]) {
+            return OBJECT_OVERHEAD + 4L * java.lang.reflect.Array.getLength(object);
+        } else if (object instanceof long[] || object instanceof double[]) {
+            return OBJECT_OVERHEAD + 8L * java.lang.reflect.Array.getLength(object);
+        } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return OBJECT_OVERHEAD;
+        } else if (depth >= MAX_DEPTH) {
+            return UNKNOWN_OBJECT_SIZE;
+        } else if (object instanceof Collection) {
+            long size = OBJECT_OVERHEAD * 2;
+            for (Object item : (Collection<?>) object) {
+                size += 4 + sizeOf(item, depth + 1);
+            }
+            return size;
+        } else if (object instanceof Map) {
+            long size = OBJECT_OVERHEAD * 3;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                size += OBJECT_OVERHEAD * 2 + sizeOf(entry.getKey(), depth + 1) + sizeOf(entry.getValue(), depth + 1);
+            }
+            return size;
+        } else if (object instanceof Object[]) {
+            long size = OBJECT_OVERHEAD;
+            for (Object item : (Object[]) object) {
+                size += 4 + sizeOf(item, depth + 1);
+            }
+            return size;
+        } else {
+            return UNKNOWN_OBJECT_SIZE;
+        }
+    }
+}
@@ -34,15 +34,22 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -158,6 +165,11 @@ public final class DiskLruCache implements Closeable {
     private final int valueCount;
     private final LinkedHashMap<String, Entry> lruEntries
             = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+    /**
+     * Same entries as {@link #lruEntries} without access ordering, so lookups
+     * through it (contains, peek) don't change the LRU order.
+     */
+    private final HashMap<String, Entry> entryIndex = new HashMap<String, Entry>();
     /**
      * This cache uses a single background thread to evict entries.
      */
@@ -189,6 +201,37 @@ public final class DiskLruCache implements Closeable {
      */
     private long nextSequenceNumber = 0;
 
+    /*
+     * Group commit. By default every ACTION_DIRTY line is flushed before the
+     * edit's files are created. When a flush policy is set, journal lines are
+     * buffered and flushed together once journalFlushOps lines are pending or
+     * journalFlushInterval ms after the first pending line, whichever comes
+     * first. A crash may then lose the most recent unflushed edits, which is
+     * the same as if they had never been committed; files they left behind
+     * are not in the journal and are deleted by processJournal on next open.
+     */
+    private long journalFlushInterval = 0;
+    private int journalFlushOps = 0;
+    private int pendingJournalOps;
+    private boolean journalFlushScheduled;
+    private ScheduledThreadPoolExecutor journalFlushExecutor;
+    private final Runnable journalFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DiskLruCache.this) {
+                journalFlushScheduled = false;
+                if (journalWriter == null) {
+                    return; // closed
+                }
+                try {
+                    flushJournal();
+                } catch (IOException ignored) {
+                    // retried on the next flush
+                }
+            }
+        }
+    };
+
     private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize) {
         this.directory = directory;
         this.appVersion = appVersion;
@@ -390,6 +433,7 @@ public final class DiskLruCache implements Closeable {
         String key = parts[1];
         if (parts[0].equals(ACTION_REMOVE) && parts.length == 2) {
             lruEntries.remove(key);
+            entryIndex.remove(key);
             return;
         }
 
@@ -397,6 +441,7 @@ public final class DiskLruCache implements Closeable {
         if (entry == null) {
             entry = new Entry(key);
             lruEntries.put(key, entry);
+            entryIndex.put(key, entry);
         }
 
         if (parts[0].equals(ACTION_CLEAN) && parts.length == 2 + valueCount) {
@@ -431,10 +476,88 @@ public final class DiskLruCache implements Closeable {
                     deleteIfExists(entry.getDirtyFile(t));
                 }
                 i.remove();
+                entryIndex.remove(entry.key);
+            }
+        }
+        deleteOrphanFiles();
+    }
+
+    /**
+     * Deletes value files that aren't referenced by the journal. These are
+     * left behind when the process dies before a buffered journal line was
+     * flushed.
+     */
+    private void deleteOrphanFiles() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(JOURNAL_FILE) || name.equals(JOURNAL_FILE_TMP)) {
+                continue;
+            }
+            int dot = name.indexOf('.');
+            if (dot <= 0) {
+                continue;
+            }
+            String key = name.substring(0, dot);
+            Entry entry = entryIndex.get(key);
+            if (entry == null || name.endsWith(".tmp")) {
+                deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Enables group commit of the journal. Lines are flushed once
+     * {@code maxPendingOps} are buffered or {@code intervalMillis} after the
+     * first buffered line. Pass 0 for both to flush before every edit, which
+     * is the default.
+     *
+     * @param intervalMillis the longest time a journal line may stay buffered
+     * @param maxPendingOps  the number of buffered lines that forces a flush
+     */
+    public synchronized void setJournalFlushPolicy(long intervalMillis, int maxPendingOps) {
+        if (intervalMillis < 0 || maxPendingOps < 0) {
+            throw new IllegalArgumentException("intervalMillis < 0 || maxPendingOps < 0");
+        }
+        this.journalFlushInterval = intervalMillis;
+        this.journalFlushOps = maxPendingOps;
+    }
+
+    private boolean isGroupCommit() {
+        return journalFlushInterval > 0 || journalFlushOps > 0;
+    }
+
+    /**
+     * Called after a journal line that must reach the filesystem before the
+     * edit's files are created, or buffered under group commit.
+     */
+    private void journalWritten() throws IOException {
+        if (!isGroupCommit()) {
+            journalWriter.flush();
+            return;
+        }
+        pendingJournalOps++;
+        if (journalFlushOps > 0 && pendingJournalOps >= journalFlushOps) {
+            flushJournal();
+        } else if (journalFlushInterval > 0 && !journalFlushScheduled) {
+            if (journalFlushExecutor == null) {
+                journalFlushExecutor = new ScheduledThreadPoolExecutor(1);
+                journalFlushExecutor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+                journalFlushExecutor.allowCoreThreadTimeOut(true);
             }
+            journalFlushScheduled = true;
+            journalFlushExecutor.schedule(journalFlushRunnable, journalFlushInterval, TimeUnit.MILLISECONDS);
         }
     }
 
+    private void flushJournal() throws IOException {
+        pendingJournalOps = 0;
+        journalWriter.flush();
+    }
+
     /**
      * Creates a new journal that omits redundant information. This replaces the
      * current journal if it exists.
@@ -465,6 +588,7 @@ public final class DiskLruCache implements Closeable {
 
         writer.close();
         journalFileTmp.renameTo(journalFile);
+        pendingJournalOps = 0;
         journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8), IO_BUFFER_SIZE);
     }
 
@@ -509,6 +633,55 @@ public final class DiskLruCache implements Closeable {
         return new Snapshot(key, entry.sequenceNumber, ins);
     }
 
+    /**
+     * Returns true if a readable entry named {@code key} exists. Unlike
+     * {@link #get} this opens no files, writes nothing to the journal and
+     * doesn't change the LRU order.
+     */
+    public synchronized boolean contains(String key) {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = entryIndex.get(key);
+        return entry != null && entry.readable;
+    }
+
+    /**
+     * Returns an unbuffered stream of the value at {@code index} of the entry
+     * named {@code key}, or null if it doesn't exist or is not readable.
+     * Unlike {@link #get} this writes nothing to the journal and doesn't change
+     * the LRU order, so reading metadata (e.g. a header) doesn't count as an
+     * access. The caller must close the stream and must not edit the entry
+     * while reading it.
+     */
+    public synchronized InputStream peek(String key, int index) throws IOException {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = entryIndex.get(key);
+        if (entry == null || !entry.readable) {
+            return null;
+        }
+        try {
+            return new FileInputStream(entry.getCleanFile(index));
+        } catch (FileNotFoundException e) {
+            // a file must have been deleted manually!
+            return null;
+        }
+    }
+
+    /**
+     * Returns the keys of all readable entries, least recently used first.
+     */
+    public synchronized List<String> keys() {
+        checkNotClosed();
+        List<String> keys = new ArrayList<String>(lruEntries.size());
+        for (Entry entry : lruEntries.values()) {
+            if (entry.readable) {
+                keys.add(entry.key);
+            }
+        }
+        return keys;
+    }
+
     /**
      * Returns an editor for the entry named {@code key}, or null if another
      * edit is in progress.
@@ -528,6 +701,7 @@ public final class DiskLruCache implements Closeable {
         if (entry == null) {
             entry = new Entry(key);
             lruEntries.put(key, entry);
+            entryIndex.put(key, entry);
         } else if (entry.currentEditor != null) {
             return null; // another edit is in progress
         }
@@ -537,10 +711,59 @@ public final class DiskLruCache implements Closeable {
 
         // flush the journal before creating files to prevent file leaks
         journalWriter.write(ACTION_DIRTY + ' ' + key + '\n');
-        journalWriter.flush();
+        journalWritten();
         return editor;
     }
 
+    /**
+     * Returns editors for all {@code keys} that aren't currently being
+     * edited, writing their ACTION_DIRTY lines with a single journal flush.
+     * Keys that are already being edited are left out of the result. Every
+     * returned editor must be committed or aborted, for example with
+     * {@link #commitAll}.
+     */
+    public synchronized Map<String, Editor> editAll(Collection<String> keys) throws IOException {
+        checkNotClosed();
+        Map<String, Editor> editors = new LinkedHashMap<String, Editor>();
+        for (String key : keys) {
+            validateKey(key);
+            if (editors.containsKey(key)) {
+                continue;
+            }
+            Entry entry = lruEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                lruEntries.put(key, entry);
+                entryIndex.put(key, entry);
+            } else if (entry.currentEditor != null) {
+                continue; // another edit is in progress
+            }
+            Editor editor = new Editor(entry);
+            entry.currentEditor = editor;
+            journalWriter.write(ACTION_DIRTY + ' ' + key + '\n');
+            editors.put(key, editor);
+        }
+        if (!editors.isEmpty()) {
+            if (isGroupCommit()) {
+                pendingJournalOps += editors.size() - 1;
+                journalWritten();
+            } else {
+                journalWriter.flush();
+            }
+        }
+        return editors;
+    }
+
+    /**
+     * Commits all {@code editors} under one lock. Editors whose streams had
+     * errors are rolled back as in {@link Editor#commit}.
+     */
+    public synchronized void commitAll(Collection<Editor> editors) throws IOException {
+        for (Editor editor : editors) {
+            editor.commit();
+        }
+    }
+
     /**
      * Returns the directory where this cache stores its data.
      */
@@ -607,8 +830,12 @@ public final class DiskLruCache implements Closeable {
             }
         } else {
             lruEntries.remove(entry.key);
+            entryIndex.remove(entry.key);
             journalWriter.write(ACTION_REMOVE + ' ' + entry.key + '\n');
         }
+        if (isGroupCommit()) {
+            journalWritten();
+        }
 
         if (curSize > maxSize || journalRebuildRequired()) {
             executorService.submit(cleanupCallable);
@@ -651,6 +878,10 @@ public final class DiskLruCache implements Closeable {
         redundantOpCount++;
         journalWriter.append(ACTION_REMOVE + ' ' + key + '\n');
         lruEntries.remove(key);
+        entryIndex.remove(key);
+        if (isGroupCommit()) {
+            journalWritten();
+        }
 
         if (journalRebuildRequired()) {
             executorService.submit(cleanupCallable);
@@ -678,7 +909,7 @@ public final class DiskLruCache implements Closeable {
     public synchronized void flush() throws IOException {
         checkNotClosed();
         trimToSize();
-        journalWriter.flush();
+        flushJournal();
     }
 
     /**
@@ -696,6 +927,11 @@ public final class DiskLruCache implements Closeable {
         trimToSize();
         journalWriter.close();
         journalWriter = null;
+        if (journalFlushExecutor != null) {
+            journalFlushExecutor.shutdownNow();
+            journalFlushExecutor = null;
+            journalFlushScheduled = false;
+        }
     }
 
     private void trimToSize() throws IOException {
@@ -760,6 +996,44 @@ public final class DiskLruCache implements Closeable {
             return inputStreamToString(getInputStream(index));
         }
 
+        /**
+         * Returns the value for {@code index} as a byte array. The whole file
+         * is read with positional {@link FileChannel} reads into one array,
+         * independent of how much of {@link #getInputStream} was consumed.
+         */
+        public byte[] getBytes(int index) throws IOException {
+            FileChannel channel = getChannel(index);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("value too large: " + size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) == -1) {
+                    break;
+                }
+            }
+            if (buffer.hasRemaining()) {
+                // the file was truncated while reading
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Maps the value for {@code index} read-only into memory. The mapping
+         * remains valid after this snapshot is closed; editing the entry later
+         * writes a new file and doesn't change the mapped content.
+         */
+        public MappedByteBuffer map(int index) throws IOException {
+            FileChannel channel = getChannel(index);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        private FileChannel getChannel(int index) {
+            return ((FileInputStream) ins[index]).getChannel();
+        }
+
         @Override
         public void close() {
             for (InputStream in : ins) {
@@ -0,0 +1,392 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按大小限制的内存缓存，超出容量时按LRU淘汰
+ * 按key的hash分为多个段，每段独立加锁和计算容量，不同key的读写互不阻塞；
+ * 淘汰的对象通过OnEvictedListener回调(在锁外调用)，由调用方决定是否写入磁盘；
+ * 单个对象超过段容量(maxSize/段数)时不放入内存，只由调用方写入磁盘，不算作淘汰；
+ * 被淘汰对象的标示仍保留在context索引中，以便removeContext时一并清除磁盘上的对象，
+ * 磁盘上的对象被移除后由调用方通过unindex清除
+ *
+ * @author Cangol
+ */
+final class MemoryCache {
+    private static final char KEY_SEPARATOR = '\u0001';
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_SIZE = 256 * 1024;
+
+    private final Segment[] mSegments;
+    private final ConcurrentHashMap<String, Set<String>> mContextIndex = new ConcurrentHashMap<>();
+    private final long mMaxSize;
+    private volatile CacheSizer mCacheSizer;
+    private volatile OnEvictedListener mOnEvictedListener;
+
+    MemoryCache(long maxSize, CacheSizer cacheSizer) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.mMaxSize = maxSize;
+        this.mCacheSizer = cacheSizer;
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxSize / (count * 2) >= MIN_SEGMENT_SIZE) {
+            count *= 2;
+        }
+        mSegments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            mSegments[i] = new Segment(maxSize / count);
+        }
+    }
+
+    void setCacheSizer(CacheSizer cacheSizer) {
+        this.mCacheSizer = cacheSizer;
+    }
+
+    void setOnEvictedListener(OnEvictedListener listener) {
+        this.mOnEvictedListener = listener;
+    }
+
+    private static String makeKey(String context, String id) {
+        return context + KEY_SEPARATOR + id;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mSegments[h & (mSegments.length - 1)];
+    }
+
+    /**
+     * 获取缓存对象，命中时移到队尾
+     *
+     * @param context
+     * @param id
+     * @return
+     */
+    CacheObject get(String context, String id) {
+        String key = makeKey(context, id);
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * 添加缓存对象，单个对象超过段容量(maxEntrySize)时不放入内存也不回调OnEvictedListener，
+     * 此时同id的旧对象也从内存移除，由调用方只写入磁盘
+     *
+     * @param context
+     * @param id
+     * @param object
+     * @return 是否已放入内存
+     */
+    boolean put(String context, String id, CacheObject object) {
+        long weight = Math.max(1, mCacheSizer.sizeOf(context, id, object.getObject()));
+        String key = makeKey(context, id);
+        Segment segment = segmentFor(key);
+        List<CacheObject> evicted = new ArrayList<>();
+        boolean added;
+        synchronized (segment) {
+            index(context, id);
+            added = segment.put(key, object, weight, evicted);
+        }
+        dispatchEvicted(evicted);
+        return added;
+    }
+
+    /**
+     * 能放入内存的单个对象的最大大小
+     *
+     * @return
+     */
+    long maxEntrySize() {
+        return mMaxSize / mSegments.length;
+    }
+
+    /**
+     * 磁盘上的对象已被移除时调用，对象不在内存中时从context索引中移除
+     *
+     * @param context
+     * @param id
+     */
+    void unindex(String context, String id) {
+        String key = makeKey(context, id);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Set<String> ids = mContextIndex.get(context);
+            if (ids != null && !segment.contains(key)) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    /**
+     * 将磁盘上的对象加入context索引
+     *
+     * @param context
+     * @param id
+     */
+    void reindex(String context, String id) {
+        String key = makeKey(context, id);
+        synchronized (segmentFor(key)) {
+            index(context, id);
+        }
+    }
+
+    /**
+     * 有索引的context
+     *
+     * @return
+     */
+    List<String> contexts() {
+        return new ArrayList<>(mContextIndex.keySet());
+    }
+
+    /**
+     * 移除缓存对象，不回调OnEvictedListener
+     *
+     * @param context
+     * @param id
+     * @return
+     */
+    CacheObject remove(String context, String id) {
+        String key = makeKey(context, id);
+        CacheObject object = segmentFor(key).remove(key);
+        Set<String> ids = mContextIndex.get(context);
+        if (ids != null) {
+            ids.remove(id);
+        }
+        return object;
+    }
+
+    /**
+     * 移除context下的所有缓存对象，不回调OnEvictedListener
+     *
+     * @param context
+     * @return 被移除的对象
+     */
+    List<CacheObject> removeContext(String context) {
+        Set<String> ids = mContextIndex.remove(context);
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<CacheObject> removed = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            String key = makeKey(context, id);
+            CacheObject object = segmentFor(key).remove(key);
+            if (object != null) {
+                removed.add(object);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * context下的缓存标示(含已被淘汰到磁盘的)
+     *
+     * @param context
+     * @return
+     */
+    List<String> keys(String context) {
+        Set<String> ids = mContextIndex.get(context);
+        return ids == null ? new ArrayList<String>() : new ArrayList<>(ids);
+    }
+
+    void clear() {
+        for (Segment segment : mSegments) {
+            segment.clear();
+        }
+        mContextIndex.clear();
+    }
+
+    /**
+     * 当前占用大小
+     *
+     * @return
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : mSegments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    long maxSize() {
+        return mMaxSize;
+    }
+
+    int count() {
+        int count = 0;
+        for (Segment segment : mSegments) {
+            count += segment.count();
+        }
+        return count;
+    }
+
+    /**
+     * 淘汰对象直到占用不超过maxSize
+     *
+     * @param maxSize
+     */
+    void trimToSize(long maxSize) {
+        List<CacheObject> evicted = new ArrayList<>();
+        long segmentSize = maxSize / mSegments.length;
+        for (Segment segment : mSegments) {
+            segment.trimToSize(segmentSize, evicted);
+        }
+        dispatchEvicted(evicted);
+    }
+
+    /**
+     * 移除所有已过期的对象，不回调OnEvictedListener
+     *
+     * @return 移除的个数
+     */
+    int removeExpired() {
+        int count = 0;
+        for (Segment segment : mSegments) {
+            count += segment.removeExpired();
+        }
+        return count;
+    }
+
+    private void index(String context, String id) {
+        Set<String> ids = mContextIndex.get(context);
+        if (ids == null) {
+            ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> old = mContextIndex.putIfAbsent(context, ids);
+            if (old != null) {
+                ids = old;
+            }
+        }
+        ids.add(id);
+    }
+
+    private void dispatchEvicted(List<CacheObject> evicted) {
+        OnEvictedListener listener = mOnEvictedListener;
+        if (listener != null) {
+            for (CacheObject object : evicted) {
+                listener.onEvicted(object);
+            }
+        }
+    }
+
+    interface OnEvictedListener {
+        /**
+         * 对象因容量不足被淘汰
+         *
+         * @param object
+         */
+        void onEvicted(CacheObject object);
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<String, Entry> mMap = new LinkedHashMap<>(16, 0.75f, true);
+        private final long mMaxSize;
+        private long mSize;
+
+        Segment(long maxSize) {
+            this.mMaxSize = maxSize;
+        }
+
+        synchronized CacheObject get(String key) {
+            Entry entry = mMap.get(key);
+            return entry == null ? null : entry.object;
+        }
+
+        synchronized boolean put(String key, CacheObject object, long weight, List<CacheObject> evicted) {
+            Entry old = mMap.remove(key);
+            if (old != null) {
+                mSize -= old.weight;
+            }
+            if (weight > mMaxSize) {
+                return false;
+            }
+            mMap.put(key, new Entry(object, weight));
+            mSize += weight;
+            trimToSize(mMaxSize, evicted);
+            return true;
+        }
+
+        synchronized boolean contains(String key) {
+            return mMap.containsKey(key);
+        }
+
+        synchronized CacheObject remove(String key) {
+            Entry entry = mMap.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            mSize -= entry.weight;
+            return entry.object;
+        }
+
+        synchronized void clear() {
+            mMap.clear();
+            mSize = 0;
+        }
+
+        synchronized long size() {
+            return mSize;
+        }
+
+        synchronized int count() {
+            return mMap.size();
+        }
+
+        synchronized int removeExpired() {
+            int count = 0;
+            Iterator<Map.Entry<String, Entry>> iterator = mMap.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (entry.object.isExpired()) {
+                    iterator.remove();
+                    mSize -= entry.weight;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized void trimToSize(long maxSize, List<CacheObject> evicted) {
+            Iterator<Map.Entry<String, Entry>> iterator = mMap.entrySet().iterator();
+            while (mSize > maxSize && iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                iterator.remove();
+                mSize -= entry.weight;
+                evicted.add(entry.object);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final CacheObject object;
+        final long weight;
+
+        Entry(CacheObject object, long weight) {
+            this.object = object;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * 基于Java序列化的编解码器，可编码任意对象，作为其他编码器都不支持时的后备
+ *
+ * @author Cangol
+ */
+class SerializableCacheCodec implements CacheCodec {
+    static final int ID = 0;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public boolean canEncode(Serializable object) {
+        return true;
+    }
+
+    @Override
+    public void encode(Serializable object, DataOutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(object);
+        oos.flush();
+    }
+
+    @Override
+    public Serializable decode(DataInputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        try {
+            return (Serializable) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright (c) 2013 Cangol
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mobi.cangol.mobile.service.cache;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片的磁盘缓存
+ * 按key的hash把条目分到N个子目录，每个子目录是一个独立的DiskLruCache，
+ * 各自拥有日志、锁和maxSize/N的容量；条目很多时日志重建和锁竞争都按分片数缩小
+ *
+ * @author Cangol
+ */
+public final class ShardedDiskLruCache implements Closeable {
+    static final String SHARD_FILE = "shards";
+    private final File mDirectory;
+    private final DiskLruCache[] mShards;
+
+    private ShardedDiskLruCache(File directory, DiskLruCache[] shards) {
+        this.mDirectory = directory;
+        this.mShards = shards;
+    }
+
+    /**
+     * 打开缓存，不存在时创建
+     * 分片数为1时直接使用directory，与DiskLruCache的目录结构相同；
+     * 分片数大于1时使用directory下的0..N-1子目录。
+     * 分片数记录在directory下的标记文件中，与本次分片数不同时(key会映射到其他分片)清空整个目录后重建
+     *
+     * @param directory
+     * @param appVersion
+     * @param valueCount
+     * @param maxSize    所有分片的总容量
+     * @param shardCount 分片数
+     * @return
+     * @throws IOException
+     */
+    public static ShardedDiskLruCache open(File directory, int appVersion, int valueCount, long maxSize, int shardCount)
+            throws IOException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount <= 0");
+        }
+        if (maxSize / shardCount <= 0) {
+            throw new IllegalArgumentException("maxSize < shardCount");
+        }
+        if (readShardCount(directory) != shardCount) {
+            if (directory.exists()) {
+                DiskLruCache.deleteContents(directory);
+            }
+            writeShardCount(directory, shardCount);
+        }
+        DiskLruCache[] shards = new DiskLruCache[shardCount];
+        if (shardCount == 1) {
+            shards[0] = DiskLruCache.open(directory, appVersion, valueCount, maxSize);
+        } else {
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    shards[i] = DiskLruCache.open(new File(directory, String.valueOf(i)), appVersion, valueCount, maxSize / shardCount);
+                }
+            } catch (IOException e) {
+                for (DiskLruCache shard : shards) {
+                    DiskLruCache.closeQuietly(shard);
+                }
+                throw e;
+            }
+        }
+        return new ShardedDiskLruCache(directory, shards);
+    }
+
+    /**
+     * 读取目录当前的分片数
+     * 没有标记文件时：根目录下有日志且没有分片子目录的视为未分片的旧缓存(分片数1)，否则视为未知
+     *
+     * @param directory
+     * @return 未知时返回0
+     */
+    static int readShardCount(File directory) {
+        File marker = new File(directory, SHARD_FILE);
+        if (marker.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(marker), "US-ASCII"));
+                String line = reader.readLine();
+                return line != null ? Integer.parseInt(line.trim()) : 0;
+            } catch (IOException | NumberFormatException e) {
+                return 0;
+            } finally {
+                DiskLruCache.closeQuietly(reader);
+            }
+        }
+        if (!new File(directory, DiskLruCache.JOURNAL_FILE).exists()) {
+            return 0;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 先写临时文件再重命名，避免留下不完整的标记
+     *
+     * @param directory
+     * @param shardCount
+     * @throws IOException
+     */
+    private static void writeShardCount(File directory, int shardCount) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("failed to create directory: " + directory);
+        }
+        File tmp = new File(directory, SHARD_FILE + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "US-ASCII");
+        try {
+            writer.write(shardCount + "\n");
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(directory, SHARD_FILE))) {
+            throw new IOException("failed to write shard marker: " + directory);
+        }
+    }
+
+    private DiskLruCache shardFor(String key) {
+        if (mShards.length == 1) {
+            return mShards[0];
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mShards[(h & 0x7fffffff) % mShards.length];
+    }
+
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 设置每个分片的日志批量提交策略
+     *
+     * @param intervalMillis
+     * @param maxPendingOps
+     * @see DiskLruCache#setJournalFlushPolicy(long, int)
+     */
+    public void setJournalFlushPolicy(long intervalMillis, int maxPendingOps) {
+        for (DiskLruCache shard : mShards) {
+            shard.setJournalFlushPolicy(intervalMillis, maxPendingOps);
+        }
+    }
+
+    public DiskLruCache.Snapshot get(String key) throws IOException {
+        return shardFor(key).get(key);
+    }
+
+    public boolean contains(String key) {
+        return shardFor(key).contains(key);
+    }
+
+    /**
+     * 读取值但不记录日志也不改变LRU顺序，用于读取头部等元数据
+     *
+     * @param key
+     * @param index
+     * @return 不存在时返回null
+     * @throws IOException
+     */
+    public InputStream peek(String key, int index) throws IOException {
+        return shardFor(key).peek(key, index);
+    }
+
+    /**
+     * 所有分片的key，每个分片内按最近最少使用排序
+     *
+     * @return
+     */
+    public List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (DiskLruCache shard : mShards) {
+            keys.addAll(shard.keys());
+        }
+        return keys;
+    }
+
+    public DiskLruCache.Editor edit(String key) throws IOException {
+        return shardFor(key).edit(key);
+    }
+
+    /**
+     * 按分片批量获取编辑器，每个分片只刷新一次日志
+     *
+     * @param keys
+     * @return
+     * @throws IOException
+     * @see DiskLruCache#editAll(Collection)
+     */
+    public Map<String, DiskLruCache.Editor> editAll(Collection<String> keys) throws IOException {
+        if (mShards.length == 1) {
+            return mShards[0].editAll(keys);
+        }
+        Map<DiskLruCache, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            DiskLruCache shard = shardFor(key);
+            List<String> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(shard, group);
+            }
+            group.add(key);
+        }
+        Map<String, DiskLruCache.Editor> editors = new LinkedHashMap<>();
+        for (Map.Entry<DiskLruCache, List<String>> entry : groups.entrySet()) {
+            editors.putAll(entry.getKey().editAll(entry.getValue()));
+        }
+        return editors;
+    }
+
+    /**
+     * 提交编辑器，每个编辑器在其所属分片上提交
+     *
+     * @param editors
+     * @throws IOException
+     */
+    public void commitAll(Collection<DiskLruCache.Editor> editors) throws IOException {
+        if (mShards.length == 1) {
+            mShards[0].commitAll(editors);
+            return;
+        }
+        for (DiskLruCache.Editor editor : editors) {
+            editor.commit();
+        }
+    }
+
+    public boolean remove(String key) throws IOException {
+        return shardFor(key).remove(key);
+    }
+
+    public long getMaxSize() {
+        long maxSize = 0;
+        for (DiskLruCache shard : mShards) {
+            maxSize += shard.getMaxSize();
+        }
+        return maxSize;
+    }
+
+    public long size() {
+        long size = 0;
+        for (DiskLruCache shard : mShards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public boolean isClosed() {
+        for (DiskLruCache shard : mShards) {
+            if (!shard.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void flush() throws IOException {
+        for (DiskLruCache shard : mShards) {
+            shard.flush();
+        }
+    }
+
+    /**
+     * 关闭所有分片，出错时仍继续关闭其余分片
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (DiskLruCache shard : mShards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 关闭并删除所有分片的数据
+     *
+     * @throws IOException
+     */
+    public void delete() throws IOException {
+        IOException error = null;
+        for (DiskLruCache shard : mShards) {
+            try {
+                shard.delete();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
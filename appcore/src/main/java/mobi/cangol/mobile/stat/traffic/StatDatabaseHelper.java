@@ -58,8 +58,6 @@ class StatDatabaseHelper extends CoreSQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d("onUpgrade " + oldVersion + "->" + newVersion);
-        if (db.getVersion() < DATABASE_VERSION) {
-            //DatabaseUtils.dropTable(db, Goddess.class);
-        }
+        DatabaseUtils.migrateTables(db, AppTraffic.class, DateTraffic.class);
     }
 }